@@ -1,7 +1,5 @@
 package com.avery.fingerpaint;
 
-import android.graphics.Color;
-
 import java.io.Serializable;
 
 /**
@@ -48,16 +46,22 @@ public class CMYColor implements Serializable
     }
 
     /**
-     * Convert from CMY to RGB.
+     * Sets this color from an RGB color, without allocating a new CMYColor.
      */
-    public static int toRGB(float c, float m, float y)
+    public void setRGB(int color)
     {
-        // Based on ColorMine https://github.com/THEjoezack/ColorMine (MIT License).
-        int r = (int) ((1 - c) * 255);
-        int g = (int) ((1 - m) * 255);
-        int b = (int) ((1 - y) * 255);
+        int cmy = rgbToCMY(color);
+        this.c = cyan(cmy) / 255f;
+        this.m = magenta(cmy) / 255f;
+        this.y = yellow(cmy) / 255f;
+    }
 
-        return Color.rgb(r, g, b);
+    /**
+     * Convert from CMY to RGB, by way of the packed form.
+     */
+    public static int toRGB(float c, float m, float y)
+    {
+        return cmyToRGB(packCMY(toChannel(c), toChannel(m), toChannel(y)));
     }
 
     /**
@@ -66,12 +70,80 @@ public class CMYColor implements Serializable
     public static CMYColor fromRGB(int color)
     {
         CMYColor newColor = new CMYColor();
+        newColor.setRGB(color);
+        return newColor;
+    }
 
-        // Based on ColorMine https://github.com/THEjoezack/ColorMine (MIT License).
-        newColor.setC(1f - Color.red(color) / 255f);
-        newColor.setM(1f - Color.green(color) / 255f);
-        newColor.setY(1f - Color.blue(color) / 255f);
+    // The methods below work on CMY colors packed into an int as 0x00CCMMYY,
+    // with each channel from 0 (none) to 255 (full), so they don't allocate.
 
-        return newColor;
+    public static int packCMY(int c, int m, int y)
+    {
+        return (c << 16) | (m << 8) | y;
+    }
+
+    public static int cyan(int cmy)
+    {
+        return (cmy >> 16) & 0xff;
+    }
+
+    public static int magenta(int cmy)
+    {
+        return (cmy >> 8) & 0xff;
+    }
+
+    public static int yellow(int cmy)
+    {
+        return cmy & 0xff;
+    }
+
+    /**
+     * Convert from RGB to packed CMY. Each CMY channel is 255 minus the RGB one.
+     */
+    public static int rgbToCMY(int color)
+    {
+        return ~color & 0xffffff;
+    }
+
+    /**
+     * Convert from packed CMY to opaque RGB.
+     */
+    public static int cmyToRGB(int cmy)
+    {
+        return 0xff000000 | (~cmy & 0xffffff);
+    }
+
+    /**
+     * Mix the first count RGB colors in the subtractive color space.
+     */
+    public static int mix(int[] colors, int count)
+    {
+        // Simple algorithm for mixing N colors in the subtractive color space...
+        // I made it up because I wasn't satisfied with what I found online.
+        // Each channel's total stays well within an int, so there's no need to
+        // clamp until the end.
+        int c = 0;
+        int m = 0;
+        int y = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            int cmy = rgbToCMY(colors[i]);
+            c += cyan(cmy);
+            m += magenta(cmy);
+            y += yellow(cmy);
+        }
+        return cmyToRGB(packCMY(clamp(c), clamp(m), clamp(y)));
+    }
+
+    private static int clamp(int channel)
+    {
+        return Math.min(255, channel);
+    }
+
+    // A channel from 0.0f to 1.0f as a packed one, from 0 to 255.
+    private static int toChannel(float f)
+    {
+        return Math.max(0, Math.min(255, Math.round(f * 255)));
     }
 }
@@ -0,0 +1,190 @@
+package com.avery.fingerpaint;
+
+/**
+ * Mixes a changing set of paints. The totals each model needs are kept up to
+ * date as paints are added and removed, so selecting or deselecting a paint
+ * costs the same however many are selected, and the mixed color is only
+ * worked out again after the selection changes.
+ *
+ * There are three models:
+ *   MODEL_ADDITIVE     - adds up the cyan, magenta and yellow of every paint,
+ *                        as CMYColor.mix does. Quickly goes to black.
+ *   MODEL_AVERAGE      - the weighted average of the paints' CMY.
+ *   MODEL_KUBELKA_MUNK - averages each channel's absorption to scattering
+ *                        ratio (K/S), which behaves more like real pigment:
+ *                        a little of a dark paint darkens a mix a lot more
+ *                        than a little of a light one lightens it.
+ *
+ * Kubelka-Munk uses a table of K/S for every 8-bit channel value, so mixing
+ * needs no square roots or divisions per paint, and the totals are kept in
+ * fixed point so that removing a paint exactly undoes adding it.
+ */
+public class ColorMixer
+{
+    public static final int MODEL_ADDITIVE = 0;
+    public static final int MODEL_AVERAGE = 1;
+    public static final int MODEL_KUBELKA_MUNK = 2;
+
+    // K/S as 8.24 fixed point for each RGB channel value 0 to 255. K/S is
+    // (1 - R)^2 / 2R for reflectance R, which grows without limit as R goes to 0.
+    // Real paint is never perfectly black, so channel values are mapped onto
+    // reflectances from MIN_REFLECTANCE to 1, which also stops a little black
+    // from overwhelming a mix.
+    private static final int KS_SHIFT = 24;
+    private static final double MIN_REFLECTANCE = 0.04;
+    private static final int[] KS_TABLE = new int[256];
+
+    static
+    {
+        for (int i = 0; i < 256; i++)
+        {
+            double r = MIN_REFLECTANCE + (1 - MIN_REFLECTANCE) * i / 255;
+            KS_TABLE[i] = (int) Math.round((1 - r) * (1 - r) / (2 * r) * (1 << KS_SHIFT));
+        }
+    }
+
+    private int model;
+
+    // Totals of the weighted CMY channels and K/S of every paint added.
+    private long weight;
+    private long cyan;
+    private long magenta;
+    private long yellow;
+    private long ksRed;
+    private long ksGreen;
+    private long ksBlue;
+
+    // The mixed color, if it's been worked out since the paints last changed.
+    private int mixedColor;
+    private boolean mixedColorValid;
+
+    public ColorMixer(int model)
+    {
+        this.model = model;
+    }
+
+    public int getModel()
+    {
+        return model;
+    }
+
+    public void setModel(int model)
+    {
+        this.model = model;
+        mixedColorValid = false;
+    }
+
+    public void add(int color)
+    {
+        add(color, 1);
+    }
+
+    /**
+     * Adds weight parts of the RGB color to the mix.
+     */
+    public void add(int color, int weight)
+    {
+        update(color, weight);
+    }
+
+    public void remove(int color)
+    {
+        remove(color, 1);
+    }
+
+    /**
+     * Removes weight parts of the RGB color, which must have been added before.
+     */
+    public void remove(int color, int weight)
+    {
+        update(color, -weight);
+    }
+
+    public void clear()
+    {
+        weight = 0;
+        cyan = magenta = yellow = 0;
+        ksRed = ksGreen = ksBlue = 0;
+        mixedColorValid = false;
+    }
+
+    /**
+     * The total weight of the paints in the mix.
+     */
+    public long getWeight()
+    {
+        return weight;
+    }
+
+    /**
+     * The mix of the paints added, as an RGB color. White if there are none.
+     */
+    public int getMixedColor()
+    {
+        if (!mixedColorValid)
+        {
+            mixedColor = mix();
+            mixedColorValid = true;
+        }
+        return mixedColor;
+    }
+
+    private void update(int color, int w)
+    {
+        int cmy = CMYColor.rgbToCMY(color);
+        weight += w;
+        cyan += (long) CMYColor.cyan(cmy) * w;
+        magenta += (long) CMYColor.magenta(cmy) * w;
+        yellow += (long) CMYColor.yellow(cmy) * w;
+        ksRed += (long) KS_TABLE[(color >> 16) & 0xff] * w;
+        ksGreen += (long) KS_TABLE[(color >> 8) & 0xff] * w;
+        ksBlue += (long) KS_TABLE[color & 0xff] * w;
+        mixedColorValid = false;
+    }
+
+    private int mix()
+    {
+        if (weight <= 0)
+            return 0xffffffff;
+
+        switch (model)
+        {
+            case MODEL_AVERAGE:
+                return CMYColor.cmyToRGB(CMYColor.packCMY(
+                        average(cyan), average(magenta), average(yellow)));
+            case MODEL_KUBELKA_MUNK:
+                return 0xff000000 | (reflectance(ksRed) << 16) | (reflectance(ksGreen) << 8) | reflectance(ksBlue);
+            default:
+                return CMYColor.cmyToRGB(CMYColor.packCMY(
+                        (int) Math.min(255, cyan), (int) Math.min(255, magenta), (int) Math.min(255, yellow)));
+        }
+    }
+
+    private int average(long total)
+    {
+        return (int) ((total + weight / 2) / weight);
+    }
+
+    // The channel value whose K/S is closest to the average of the total.
+    private int reflectance(long ksTotal)
+    {
+        long ks = (ksTotal + weight / 2) / weight;
+
+        // KS_TABLE decreases as the channel value increases.
+        int low = 0;
+        int high = 255;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (KS_TABLE[middle] > ks)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+
+        // low is the first value at or below ks; the one before may be closer.
+        if (low > 0 && KS_TABLE[low - 1] - ks < ks - KS_TABLE[low])
+            low--;
+        return low;
+    }
+}
@@ -4,19 +4,20 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.RectF;
 import android.view.View;
 
 /**
  * The view holding custom colors chosen by the user.
  */
-public class CustomPaintView extends View
+public class CustomPaintView extends View implements SwatchCache.Swatch
 {
     private boolean selected;
     private int color;
     private Paint pOutline2;
     private Paint pOutline1;
     private Paint pFill;
+    private SwatchCache swatchCache;
+    private SwatchCache.Look look;
 
     public CustomPaintView(Context context)
     {
@@ -37,6 +38,8 @@ public class CustomPaintView extends View
         pFill = new Paint();
         //pFill.setColor(color);
         pFill.setAntiAlias(true);
+
+        look = new SwatchCache.Look();
     }
 
     public void setColor(int c)
@@ -62,8 +65,22 @@ public class CustomPaintView extends View
         return selected;
     }
 
+    public void setSwatchCache(SwatchCache cache)
+    {
+        this.swatchCache = cache;
+    }
+
     @Override
     protected void onDraw(Canvas canvas)
+    {
+        if (swatchCache != null)
+            swatchCache.draw(canvas, this, look, getWidth(), getHeight(), color, selected ? 1 : 0);
+        else
+            drawSwatch(canvas);
+    }
+
+    @Override
+    public void drawSwatch(Canvas canvas)
     {
         int highlightColor = selected ? Color.GREEN : Color.WHITE;
         pOutline1.setColor(highlightColor);
@@ -73,12 +90,6 @@ public class CustomPaintView extends View
         float centerX = radius + padding;
         float centerY = radius + padding;
 
-        RectF r = new RectF();
-        r.left = centerX - radius;
-        r.right = centerX + radius;
-        r.top = centerY - radius;
-        r.bottom = centerY + radius;
-
         canvas.drawCircle(centerX, centerY, radius+8, pOutline2);
         canvas.drawCircle(centerX, centerY, radius+6, pOutline1);
         canvas.drawCircle(centerX, centerY, radius, pFill);
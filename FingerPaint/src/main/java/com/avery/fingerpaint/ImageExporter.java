@@ -0,0 +1,103 @@
+package com.avery.fingerpaint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Renders paths as a PNG of any size. Since paths are stored using abstract
+ * coordinates (x=0..1, y=0..1), they can be drawn at a much higher resolution
+ * than the screen, for printing.
+ *
+ * The image is drawn a group of bands at a time and each group is encoded as
+ * soon as it's drawn, so memory use depends on the image width and not its
+ * height. It's meant to be run off the UI thread, and can be cancelled from
+ * any thread.
+ */
+public class ImageExporter
+{
+    /**
+     * Interface definition for a callback to be invoked, on the exporting
+     * thread, as rows of the image are written.
+     */
+    public interface OnProgressListener
+    {
+        public void onExportProgress(int rowsWritten, int rows);
+    }
+
+    // At most this many bands are drawn in parallel before being encoded.
+    private static final int MAX_BANDS_AT_ONCE = 4;
+
+    private StrokeRasterizer rasterizer;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates an exporter for a width by height image, drawing paths radius
+     * pixels wide either side.
+     */
+    public ImageExporter(int width, int height, float radius)
+    {
+        rasterizer = new StrokeRasterizer(width, height, radius);
+    }
+
+    public int getWidth()
+    {
+        return rasterizer.getWidth();
+    }
+
+    public int getHeight()
+    {
+        return rasterizer.getHeight();
+    }
+
+    /**
+     * Stops an export in progress, after the group of bands being drawn.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Draws the paths and writes them to out as a PNG. The paths mustn't change
+     * until it returns. Returns false if it was cancelled, leaving out incomplete.
+     */
+    public boolean export(List<PaintPath> paths, OutputStream out, OnProgressListener listener) throws IOException
+    {
+        int width = rasterizer.getWidth();
+        int height = rasterizer.getHeight();
+        int rowsAtOnce = StrokeRasterizer.BAND_HEIGHT * Math.min(MAX_BANDS_AT_ONCE, rasterizer.getThreadCount());
+        int[] pixels = new int[width * rowsAtOnce];
+
+        PngEncoder encoder = new PngEncoder(out, width, height);
+        boolean finished = false;
+        try
+        {
+            for (int top = 0; top < height; top += rowsAtOnce)
+            {
+                if (cancelled)
+                    return false;
+
+                int bottom = Math.min(height, top + rowsAtOnce);
+                rasterizer.render(paths, top, bottom, pixels);
+                encoder.writeRows(pixels, 0, bottom - top);
+
+                if (listener != null)
+                    listener.onExportProgress(bottom, height);
+            }
+            encoder.finish();
+            finished = true;
+            return true;
+        }
+        finally
+        {
+            if (!finished)
+                encoder.abort();
+        }
+    }
+}
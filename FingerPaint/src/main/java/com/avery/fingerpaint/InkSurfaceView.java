@@ -0,0 +1,566 @@
+package com.avery.fingerpaint;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Draws the strokes in progress on a render thread of its own, so that the ink
+ * keeps up with the finger even while the UI thread is busy, for example
+ * animating the palette.
+ *
+ * It sits on top of a PaintAreaView, which passes its touch events here
+ * instead of building strokes itself. The UI thread only copies the raw
+ * samples into a TouchSampleQueue; the render thread takes them, builds the
+ * strokes and draws them onto the surface. Each finished path is handed to the
+ * OnStrokeFinishedListener on the UI thread to be added to the painting, and
+ * is still drawn here until it's released, once the painting shows it.
+ *
+ * A TextureView is only composited when the UI thread draws, so it would stall
+ * along with it; a SurfaceView is composited on its own. Its surface is
+ * translucent and on top of the window, so strokes in progress are drawn over
+ * the palette too if they pass under it.
+ */
+public class InkSurfaceView extends SurfaceView implements SurfaceHolder.Callback
+{
+    /**
+     * Interface definition for a callback to be invoked on the UI thread when a
+     * stroke is finished. The path belongs to the listener, which should pass it
+     * to release() once it's drawn elsewhere.
+     */
+    public interface OnStrokeFinishedListener
+    {
+        public void onStrokeFinished(PaintPath path);
+    }
+
+    // Over a second of samples from ten fingers, so the UI thread only has to
+    // hold events back if the render thread stalls for that long.
+    private static final int QUEUE_CAPACITY = 4096;
+
+    // How often held back events are retried, in ms.
+    private static final int BACKLOG_RETRY_DELAY = 4;
+
+    private TouchSampleQueue queue;
+    private OnStrokeFinishedListener listener;
+    private Handler handler;
+
+    // backlog holds the events that didn't fit in the queue, oldest first, until
+    // there's room. Once anything is held back, later events are too, so the
+    // samples stay in order. Only used on the UI thread.
+    private ArrayList<HeldEvent> backlog;
+    private Runnable flushBacklog;
+
+    // renderThread runs while the surface exists.
+    private RenderThread renderThread;
+
+    // releasedPaths holds the paths the UI thread has released, until the
+    // render thread stops drawing them. Guarded by itself.
+    private final ArrayList<PaintPath> releasedPaths;
+
+    // touchLatency measures from each touch sample to the frame that first
+    // shows it being posted. It's recorded on the render thread, so it's
+    // guarded by itself.
+    private final LatencyHistogram touchLatency;
+
+    public InkSurfaceView(Context context)
+    {
+        super(context);
+
+        queue = new TouchSampleQueue(QUEUE_CAPACITY);
+        handler = new Handler(Looper.getMainLooper());
+        backlog = new ArrayList<HeldEvent>();
+        releasedPaths = new ArrayList<PaintPath>();
+        touchLatency = new LatencyHistogram("Ink touch to draw");
+
+        flushBacklog = new Runnable() {
+            @Override
+            public void run() {
+                flushBacklog();
+            }
+        };
+
+        setZOrderOnTop(true);
+        getHolder().setFormat(PixelFormat.TRANSLUCENT);
+        getHolder().addCallback(this);
+    }
+
+    public void setOnStrokeFinishedListener(OnStrokeFinishedListener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Time from each touch sample to the frame that first shows it. Recorded
+     * on the render thread: hold its lock while reading it.
+     */
+    public LatencyHistogram getTouchLatency()
+    {
+        return touchLatency;
+    }
+
+    /**
+     * Queues the samples in a touch event, given in this view's coordinates, for
+     * the render thread. New strokes are drawn in color. Called on the UI thread.
+     */
+    public void addTouchEvent(MotionEvent event, int color)
+    {
+        if (backlog.isEmpty() && offer(event, color))
+        {
+            wakeRenderThread();
+            return;
+        }
+
+        // The event is copied, since the framework reuses it once this returns.
+        HeldEvent held = new HeldEvent();
+        held.event = MotionEvent.obtain(event);
+        held.color = color;
+        backlog.add(held);
+        if (backlog.size() == 1)
+        {
+            Log.d("InkSurfaceView", "Sample queue full, holding events back");
+            handler.postDelayed(flushBacklog, BACKLOG_RETRY_DELAY);
+        }
+    }
+
+    /**
+     * Stops drawing paths handed to the listener, now that they're drawn elsewhere.
+     */
+    public void release(List<PaintPath> paths)
+    {
+        synchronized (releasedPaths)
+        {
+            releasedPaths.addAll(paths);
+        }
+        wakeRenderThread();
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder)
+    {
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height)
+    {
+        // The size is only known from here, so this is where the thread starts.
+        if (renderThread == null)
+        {
+            renderThread = new RenderThread(holder, width, height);
+            renderThread.thread.start();
+        }
+        else
+        {
+            renderThread.setSize(width, height);
+        }
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder)
+    {
+        // The surface can't be drawn on once this returns.
+        if (renderThread != null)
+        {
+            renderThread.finish();
+            renderThread = null;
+        }
+    }
+
+    // Adds every sample in the event to the queue, or none of them if there
+    // isn't room for them all.
+    private boolean offer(MotionEvent event, int color)
+    {
+        int historySize = event.getHistorySize();
+        int pointerCount = event.getPointerCount();
+        int action = event.getActionMasked();
+        int needed = action == MotionEvent.ACTION_MOVE ? pointerCount * (historySize + 1) : 2;
+        if (queue.remainingCapacity() < needed)
+            return false;
+
+        int index = event.getActionIndex();
+        switch (action)
+        {
+            case MotionEvent.ACTION_DOWN:
+                // Strokes left from a gesture that never finished properly.
+                queue.offer(TouchSampleQueue.CANCEL, -1, 0, 0, 0, 0, event.getEventTime());
+                // Fall through.
+            case MotionEvent.ACTION_POINTER_DOWN:
+                queue.offer(TouchSampleQueue.DOWN, event.getPointerId(index), color,
+                        event.getX(index), event.getY(index), event.getPressure(index), event.getEventTime());
+                break;
+            case MotionEvent.ACTION_MOVE:
+                // In the order they were sensed, so each finger's samples are in order.
+                for (int h = 0; h < historySize; h++)
+                {
+                    for (int i = 0; i < pointerCount; i++)
+                    {
+                        queue.offer(TouchSampleQueue.MOVE, event.getPointerId(i), 0,
+                                event.getHistoricalX(i, h), event.getHistoricalY(i, h),
+                                event.getHistoricalPressure(i, h), event.getHistoricalEventTime(h));
+                    }
+                }
+                for (int i = 0; i < pointerCount; i++)
+                {
+                    queue.offer(TouchSampleQueue.MOVE, event.getPointerId(i), 0,
+                            event.getX(i), event.getY(i), event.getPressure(i), event.getEventTime());
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP:
+                queue.offer(TouchSampleQueue.UP, event.getPointerId(index), 0,
+                        event.getX(index), event.getY(index), event.getPressure(index), event.getEventTime());
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                // Keep what was drawn before the gesture was taken away.
+                queue.offer(TouchSampleQueue.CANCEL, -1, 0, 0, 0, 0, event.getEventTime());
+                break;
+        }
+        return true;
+    }
+
+    private void flushBacklog()
+    {
+        while (!backlog.isEmpty() && offer(backlog.get(0).event, backlog.get(0).color))
+        {
+            backlog.remove(0).event.recycle();
+        }
+        wakeRenderThread();
+
+        if (!backlog.isEmpty())
+            handler.postDelayed(flushBacklog, BACKLOG_RETRY_DELAY);
+        else
+            Log.d("InkSurfaceView", "Sample queue caught up");
+    }
+
+    private void wakeRenderThread()
+    {
+        RenderThread r = renderThread;
+        if (r != null)
+            LockSupport.unpark(r.thread);
+    }
+
+    /**
+     * An event that didn't fit in the queue, and the color it was given.
+     */
+    private static class HeldEvent
+    {
+        MotionEvent event;
+        int color;
+    }
+
+    /**
+     * A stroke built on the render thread. drawnCount is how many of its points
+     * have been drawn, and handedOver the copy of its path given to the
+     * listener once it's finished.
+     */
+    private static class InkStroke extends StrokeBuilder
+    {
+        int drawnCount;
+        PaintPath handedOver;
+
+        InkStroke(int pointerId, int color, float x, float y, float pressure, long time, int width, int height)
+        {
+            super(pointerId, color, x, y, pressure, time, width, height);
+        }
+    }
+
+    /**
+     * Takes samples from the queue as they arrive, and draws the strokes they
+     * make. It sleeps while there's nothing to do, and draws at most once for
+     * each batch of samples; posting a frame waits for a free buffer, which
+     * keeps it to the display's rate.
+     */
+    private class RenderThread implements Runnable
+    {
+        final Thread thread;
+        final SurfaceHolder holder;
+        volatile boolean running;
+
+        // Set by setSize(), guarded by this.
+        int newWidth;
+        int newHeight;
+
+        // Only used on the render thread.
+        int width;
+        int height;
+        PaintPathRenderer renderer;
+        TiledCanvas strokeTiles;
+        StrokeDispatcher<InkStroke> dispatcher;
+        ArrayList<InkStroke> finished; // handed over, waiting to be released
+        ArrayList<PaintPath> released;
+        Rect dirty;
+        Rect bounds;
+        long inputTime; // the oldest sample not yet drawn, or 0
+
+        RenderThread(SurfaceHolder holder, int width, int height)
+        {
+            this.holder = holder;
+            this.newWidth = width;
+            this.newHeight = height;
+            running = true;
+            thread = new Thread(this, "InkSurfaceView render");
+        }
+
+        synchronized void setSize(int width, int height)
+        {
+            newWidth = width;
+            newHeight = height;
+            LockSupport.unpark(thread);
+        }
+
+        /**
+         * Stops the thread once it has taken every queued sample, and waits for
+         * it. Strokes still in progress are handed over, so none are lost.
+         */
+        void finish()
+        {
+            running = false;
+            LockSupport.unpark(thread);
+
+            boolean interrupted = false;
+            while (thread.isAlive())
+            {
+                try
+                {
+                    thread.join();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+
+        @Override
+        public void run()
+        {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_DISPLAY);
+
+            renderer = new PaintPathRenderer();
+            dispatcher = new StrokeDispatcher<InkStroke>() {
+                @Override
+                protected InkStroke createStroke(int pointerId, int color, float x, float y, float pressure,
+                        long time, int width, int height) {
+                    return new InkStroke(pointerId, color, x, y, pressure, time, width, height);
+                }
+
+                @Override
+                protected void onStrokeFinished(InkStroke stroke) {
+                    finishStroke(stroke);
+                }
+            };
+            finished = new ArrayList<InkStroke>();
+            released = new ArrayList<PaintPath>();
+            dirty = new Rect();
+            bounds = new Rect();
+
+            while (true)
+            {
+                // Read first, so that samples queued before finish() are still taken.
+                boolean stopping = !running;
+
+                updateSize();
+                takeSamples();
+                releasePaths();
+                if (!dirty.isEmpty())
+                    drawFrame();
+
+                if (stopping)
+                    break;
+
+                // unpark() after this check makes park() return straight away.
+                if (queue.isEmpty() && running)
+                    LockSupport.park(this);
+            }
+
+            dispatcher.finishAll();
+            strokeTiles.clear();
+        }
+
+        private void updateSize()
+        {
+            int w;
+            int h;
+            synchronized (this)
+            {
+                w = newWidth;
+                h = newHeight;
+            }
+            if (w == width && h == height)
+                return;
+
+            width = w;
+            height = h;
+            renderer.setScale(w, h);
+            dispatcher.setSize(w, h);
+
+            if (strokeTiles != null)
+                strokeTiles.clear();
+            strokeTiles = new TiledCanvas(w, h, Color.TRANSPARENT, new TiledCanvas.TileSource() {
+                @Override
+                public void redrawTile(Canvas c, Rect tileBounds) {
+                    drawStrokes(c);
+                }
+            });
+
+            // Strokes in progress have to be redrawn at the new size.
+            redrawStrokes();
+            dirty.set(0, 0, w, h);
+        }
+
+        private void takeSamples()
+        {
+            long firstTime = dispatcher.takeSamples(queue);
+            if (inputTime == 0)
+                inputTime = firstTime;
+
+            // Each stroke's new segments are drawn once for all the samples taken.
+            List<InkStroke> strokes = dispatcher.getStrokes();
+            for (int i = 0; i < strokes.size(); i++)
+            {
+                drawNewSegments(strokes.get(i));
+            }
+        }
+
+        private void drawNewSegments(InkStroke stroke)
+        {
+            PaintPath path = stroke.path;
+            if (path.getPointCount() == stroke.drawnCount)
+                return;
+
+            if (stroke.drawnCount == 0)
+                strokeTiles.drawPath(renderer, path);
+            else
+                strokeTiles.drawSegments(renderer, path, stroke.drawnCount);
+            renderer.getBounds(path, stroke.drawnCount, bounds);
+            dirty.union(bounds);
+            stroke.drawnCount = path.getPointCount();
+        }
+
+        // Hands a copy of the path over, so that the UI thread can change it
+        // while this one is still drawing it.
+        private void finishStroke(InkStroke stroke)
+        {
+            drawNewSegments(stroke);
+            finished.add(stroke);
+
+            PaintPath p = stroke.path;
+            float[] widths = p.getWidths();
+            stroke.handedOver = new PaintPath(p.getColor(), Arrays.copyOf(p.getPoints(), p.getPointCount() * 2),
+                    widths == null ? null : Arrays.copyOf(widths, p.getPointCount()), p.getPointCount());
+
+            final PaintPath path = stroke.handedOver;
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (listener != null)
+                        listener.onStrokeFinished(path);
+                }
+            });
+        }
+
+        private void releasePaths()
+        {
+            synchronized (releasedPaths)
+            {
+                if (releasedPaths.isEmpty())
+                    return;
+                released.addAll(releasedPaths);
+                releasedPaths.clear();
+            }
+
+            boolean removed = false;
+            for (int i = finished.size() - 1; i >= 0; i--)
+            {
+                InkStroke stroke = finished.get(i);
+                if (released.contains(stroke.handedOver))
+                {
+                    finished.remove(i);
+                    renderer.getBounds(stroke.path, 0, bounds);
+                    dirty.union(bounds);
+                    removed = true;
+                }
+            }
+            released.clear();
+
+            // Strokes can't be erased one at a time, so the rest go back on.
+            if (removed)
+                redrawStrokes();
+        }
+
+        private void redrawStrokes()
+        {
+            strokeTiles.clear();
+            for (int i = 0; i < finished.size(); i++)
+            {
+                strokeTiles.drawPath(renderer, finished.get(i).path);
+            }
+            List<InkStroke> strokes = dispatcher.getStrokes();
+            for (int i = 0; i < strokes.size(); i++)
+            {
+                InkStroke stroke = strokes.get(i);
+                strokeTiles.drawPath(renderer, stroke.path);
+                stroke.drawnCount = stroke.path.getPointCount();
+            }
+        }
+
+        private void drawStrokes(Canvas c)
+        {
+            for (int i = 0; i < finished.size(); i++)
+            {
+                renderer.draw(c, finished.get(i).path);
+            }
+            List<InkStroke> strokes = dispatcher.getStrokes();
+            for (int i = 0; i < strokes.size(); i++)
+            {
+                renderer.draw(c, strokes.get(i).path);
+            }
+        }
+
+        private void drawFrame()
+        {
+            // The surface may ask for more than the dirty region to be drawn, for
+            // example into a buffer that's a frame or two behind, so it's all
+            // redrawn from the tiles.
+            Canvas c = holder.lockCanvas(dirty);
+            if (c == null)
+                return;
+
+            try
+            {
+                c.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                strokeTiles.draw(c, dirty);
+            }
+            finally
+            {
+                holder.unlockCanvasAndPost(c);
+            }
+            dirty.setEmpty();
+
+            if (inputTime != 0)
+            {
+                synchronized (touchLatency)
+                {
+                    touchLatency.record((SystemClock.uptimeMillis() - inputTime) * 1000);
+                }
+                inputTime = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.avery.fingerpaint;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Counts durations, in microseconds, in buckets that are about 6% wide, so the
+ * distribution (median, 99th percentile and so on) can be reported without
+ * keeping every measurement. Recording doesn't allocate, so it can be used on
+ * every touch event and frame.
+ *
+ * Durations below 32 us have a bucket each. Above that, every power of two is
+ * split into 16 equal buckets, up to about 70 seconds; anything longer counts
+ * in the last bucket.
+ *
+ * Not thread safe: record and read it on the same thread, normally the UI thread.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKETS = 16;
+    private static final int MAX_SHIFT = 26;
+    private static final int BUCKET_COUNT = (MAX_SHIFT + 2) * SUB_BUCKETS;
+
+    private final String name;
+    private final long[] counts;
+    private long count;
+    private long sum;
+    private long max;
+
+    public LatencyHistogram(String name)
+    {
+        this.name = name;
+        counts = new long[BUCKET_COUNT];
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void record(long micros)
+    {
+        if (micros < 0)
+            micros = 0;
+
+        counts[bucket(micros)]++;
+        count++;
+        sum += micros;
+        if (micros > max)
+            max = micros;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getMax()
+    {
+        return max;
+    }
+
+    public long getMean()
+    {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * The duration that percentile percent (0 to 100) of the recorded ones are
+     * at or below, to within the width of a bucket.
+     */
+    public long getPercentile(double percent)
+    {
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(count * percent / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(max, bucketEnd(i) - 1);
+        }
+        return max;
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            counts[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    /**
+     * A one line summary of the distribution, in microseconds.
+     */
+    @Override
+    public String toString()
+    {
+        return name + ": count " + count + ", mean " + getMean() + ", p50 " + getPercentile(50)
+                + ", p90 " + getPercentile(90) + ", p99 " + getPercentile(99) + ", max " + max + " us";
+    }
+
+    /**
+     * Writes the summary followed by every bucket that isn't empty, one per line
+     * as its range in microseconds and count.
+     */
+    public void dump(Writer out) throws IOException
+    {
+        out.write(toString());
+        out.write('\n');
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            if (counts[i] > 0)
+                out.write("  " + bucketStart(i) + "-" + (bucketEnd(i) - 1) + "\t" + counts[i] + "\n");
+        }
+    }
+
+    private static int bucket(long micros)
+    {
+        if (micros < 2 * SUB_BUCKETS)
+            return (int) micros;
+
+        // The top 5 bits of the value (16 to 31) pick the bucket within its power of two.
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - 4;
+        if (shift > MAX_SHIFT)
+            return BUCKET_COUNT - 1;
+        return shift * SUB_BUCKETS + (int) (micros >> shift);
+    }
+
+    private static long bucketStart(int i)
+    {
+        if (i < 2 * SUB_BUCKETS)
+            return i;
+
+        int shift = i / SUB_BUCKETS - 1;
+        return (long) (i % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    private static long bucketEnd(int i)
+    {
+        if (i == BUCKET_COUNT - 1)
+            return Long.MAX_VALUE;
+        return bucketStart(i + 1);
+    }
+}
@@ -8,9 +8,14 @@
 package com.avery.fingerpaint;
 
 import android.app.ActionBar;
+import android.app.ProgressDialog;
+import android.content.DialogInterface;
 import android.graphics.Color;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.app.Activity;
+import android.os.Environment;
+import android.util.Log;
 import android.view.Gravity;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -23,11 +28,23 @@ import android.widget.LinearLayout;
 import android.widget.PopupWindow;
 import android.widget.ScrollView;
 import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class MainActivity extends Activity
 {
     FrameLayout mainLayout;
     PaintAreaView paintAreaView;
+    InkSurfaceView inkView;
     PaletteView paletteView;
     PrimaryPaintView cyanPaintView;
     PrimaryPaintView magentaPaintView;
@@ -36,6 +53,11 @@ public class MainActivity extends Activity
     MixButtonView mixButtonView;
     CMYColor cmy;
     PopupWindow helpWindow;
+    StrokeJournal journal;
+    ExportTask exportTask;
+
+    // Exported images are 8K on their longer side, enough to print.
+    private static final int EXPORT_SIZE = 7680;
 
     @Override
     protected void onCreate(Bundle savedInstanceState)
@@ -47,6 +69,25 @@ public class MainActivity extends Activity
         paintAreaView = new PaintAreaView(this);
         paintAreaView.setId(42);
 
+        // The journal outlives configuration changes, so that it keeps writing
+        // in order. It's only read when starting fresh; otherwise the saved
+        // instance state already holds the same paths.
+        journal = (StrokeJournal) getLastNonConfigurationInstance();
+        if (journal == null)
+        {
+            journal = new StrokeJournal(new File(getFilesDir(), "strokes.journal"));
+            if (savedInstanceState == null)
+            {
+                journal.load(new StrokeJournal.OnLoadListener() {
+                    @Override
+                    public void onJournalLoaded(ArrayList<PaintPath> paths) {
+                        paintAreaView.addRecoveredPaths(paths);
+                    }
+                });
+            }
+        }
+        paintAreaView.setJournal(journal);
+
         selectorView = new SelectorView(this);
         selectorView.setId(2);
         selectorView.setOnTouchListener(new View.OnTouchListener() {
@@ -114,7 +155,7 @@ public class MainActivity extends Activity
         paletteView.setOnSelectedColorChangeListener(new PaletteView.OnSelectedColorChangeListener() {
             @Override
             public void onSelectedColorChange(int newColor) {
-                cmy = CMYColor.fromRGB(newColor);
+                cmy.setRGB(newColor);
                 updateColors();
             }
         });
@@ -126,7 +167,7 @@ public class MainActivity extends Activity
             v.setColor((int)(Math.random() * 0x00FFFFFF) | 0xFF000000);
         }
 
-        cmy = CMYColor.fromRGB(paletteView.getCurColor());
+        cmy.setRGB(paletteView.getCurColor());
         updateColors();
 
         mainLayout = new FrameLayout(this);
@@ -155,6 +196,7 @@ public class MainActivity extends Activity
     public boolean onCreateOptionsMenu(Menu menu)
     {
         getMenuInflater().inflate(R.menu.main, menu);
+        menu.findItem(R.id.action_render_thread).setChecked(inkView != null);
         return true;
     }
 
@@ -166,6 +208,20 @@ public class MainActivity extends Activity
             case R.id.action_clear:
                 paintAreaView.clear();
                 return true;
+            case R.id.action_undo:
+                paintAreaView.undo();
+                return true;
+            case R.id.action_redo:
+                paintAreaView.redo();
+                return true;
+            case R.id.action_render_thread:
+                setRenderThreadEnabled(!item.isChecked());
+                item.setChecked(inkView != null);
+                return true;
+            case R.id.action_export:
+                if (exportTask == null)
+                    startExport();
+                return true;
             case R.id.action_help:
                 if (helpWindow == null)
                     helpWindow = buildHelpWindow();
@@ -180,6 +236,31 @@ public class MainActivity extends Activity
         }
     }
 
+    /**
+     * Switches between drawing strokes in progress on the UI thread, in the paint
+     * area, and on a render thread of their own, on a surface on top of it.
+     */
+    private void setRenderThreadEnabled(boolean enabled)
+    {
+        if (enabled == (inkView != null))
+            return;
+
+        if (enabled)
+        {
+            // Between the paint area and the palette, exactly covering the paint area.
+            inkView = new InkSurfaceView(this);
+            mainLayout.addView(inkView, 1);
+            paintAreaView.setInkSurface(inkView);
+        }
+        else
+        {
+            // Removing it stops its thread, which hands back any strokes in progress.
+            mainLayout.removeView(inkView);
+            paintAreaView.setInkSurface(null);
+            inkView = null;
+        }
+    }
+
     private PopupWindow buildHelpWindow()
     {
         final PopupWindow p = new PopupWindow(this);
@@ -211,11 +292,234 @@ public class MainActivity extends Activity
     }
 
 
+    private void startExport()
+    {
+        File dir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
+        dir.mkdirs();
+        File file = new File(dir, "FingerPaint-" + System.currentTimeMillis() + ".png");
+
+        final ImageExporter exporter = paintAreaView.createExporter(EXPORT_SIZE);
+
+        ProgressDialog dialog = new ProgressDialog(this);
+        dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        dialog.setMessage("Exporting " + exporter.getWidth() + " x " + exporter.getHeight() + " image");
+        dialog.setMax(100);
+        dialog.setCancelable(true);
+        dialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+            @Override
+            public void onCancel(DialogInterface d) {
+                exportTask.cancel();
+            }
+        });
+        dialog.setButton(DialogInterface.BUTTON_NEGATIVE, "Cancel", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface d, int which) {
+                d.cancel();
+            }
+        });
+        dialog.show();
+
+        exportTask = new ExportTask(exporter, paintAreaView.copyPaths(), file, dialog);
+        exportTask.execute();
+    }
+
+    /**
+     * Renders the painting to a PNG file off the UI thread, showing its progress.
+     */
+    private class ExportTask extends AsyncTask<Void, Integer, File>
+    {
+        private ImageExporter exporter;
+        private List<PaintPath> paths;
+        private File file;
+        private ProgressDialog dialog;
+
+        ExportTask(ImageExporter exporter, List<PaintPath> paths, File file, ProgressDialog dialog)
+        {
+            this.exporter = exporter;
+            this.paths = paths;
+            this.file = file;
+            this.dialog = dialog;
+        }
+
+        /**
+         * Stops the export and throws away what was written so far.
+         */
+        void cancel()
+        {
+            exporter.cancel();
+            cancel(false);
+        }
+
+        @Override
+        protected File doInBackground(Void... params)
+        {
+            long start = System.nanoTime();
+            OutputStream out = null;
+            boolean exported = false;
+            try
+            {
+                out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+                exported = exporter.export(paths, out, new ImageExporter.OnProgressListener() {
+                    @Override
+                    public void onExportProgress(int rowsWritten, int rows) {
+                        publishProgress(100 * rowsWritten / rows);
+                    }
+                });
+                out.close();
+                out = null;
+            }
+            catch (IOException e)
+            {
+                Log.e("MainActivity", "Unable to export " + file, e);
+                exported = false;
+            }
+            finally
+            {
+                if (out != null)
+                {
+                    try
+                    {
+                        out.close();
+                    }
+                    catch (IOException e)
+                    {
+                        // Already failed, and the file is deleted below.
+                    }
+                }
+            }
+
+            if (!exported)
+            {
+                file.delete();
+                return null;
+            }
+
+            Log.d("MainActivity", "Exported " + paths.size() + " paths as " + exporter.getWidth() + " x "
+                    + exporter.getHeight() + ", " + file.length() + " bytes in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+            return file;
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... progress)
+        {
+            dialog.setProgress(progress[0]);
+        }
+
+        @Override
+        protected void onPostExecute(File result)
+        {
+            dialog.dismiss();
+            exportTask = null;
+
+            if (result != null)
+                Toast.makeText(MainActivity.this, "Exported to " + result, Toast.LENGTH_LONG).show();
+            else
+                Toast.makeText(MainActivity.this, "Export failed", Toast.LENGTH_SHORT).show();
+        }
+
+        @Override
+        protected void onCancelled(File result)
+        {
+            dialog.dismiss();
+            exportTask = null;
+
+            // It may have finished before noticing it was cancelled.
+            if (result != null)
+                result.delete();
+        }
+    }
+
+    @Override
+    public Object onRetainNonConfigurationInstance()
+    {
+        return journal;
+    }
+
+    @Override
+    protected void onPause()
+    {
+        super.onPause();
+        dumpLatency();
+    }
+
+    /**
+     * Writes the touch latency and frame time histograms, and the palette's
+     * swatch cache hit rate, to files/latency.txt,
+     * which can be read with "adb shell run-as com.avery.fingerpaint cat files/latency.txt".
+     * They cover everything since the app started.
+     */
+    private void dumpLatency()
+    {
+        List<LatencyHistogram> histograms = new ArrayList<LatencyHistogram>(Arrays.asList(
+                paintAreaView.getTouchLatency(),
+                paintAreaView.getPerceivedLatency(),
+                paintAreaView.getDrawTimes(),
+                paintAreaView.getTouchTimes(),
+                paletteView.getFrameTimes(),
+                paletteView.getFrameIntervals()));
+        if (inkView != null)
+            histograms.add(inkView.getTouchLatency());
+
+        File file = new File(getFilesDir(), "latency.txt");
+        FileWriter out = null;
+        try
+        {
+            out = new FileWriter(file);
+            for (LatencyHistogram h : histograms)
+            {
+                // The ink's is recorded on its render thread.
+                synchronized (h)
+                {
+                    Log.d("MainActivity", h.toString());
+                    h.dump(out);
+                }
+                out.write('\n');
+            }
+
+            SwatchCache swatchCache = paletteView.getSwatchCache();
+            Log.d("MainActivity", swatchCache.toString());
+            out.write(swatchCache.toString());
+            out.write('\n');
+        }
+        catch (IOException e)
+        {
+            Log.e("MainActivity", "Unable to write " + file, e);
+        }
+        finally
+        {
+            if (out != null)
+            {
+                try
+                {
+                    out.close();
+                }
+                catch (IOException e)
+                {
+                    Log.e("MainActivity", "Unable to write " + file, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+        if (isFinishing())
+            journal.close();
+
+        // The export's dialog belongs to this activity, so it can't carry on past it.
+        if (exportTask != null)
+            exportTask.cancel();
+    }
+
     @Override
     protected void onSaveInstanceState(Bundle outState)
     {
         super.onSaveInstanceState(outState);
         outState.putSerializable("cmyColor", cmy);
+        outState.putBoolean("renderThread", inkView != null);
         paletteView.mySaveInstanceState(outState);
     }
 
@@ -224,6 +528,7 @@ public class MainActivity extends Activity
     {
         super.onRestoreInstanceState(savedInstanceState);
         cmy = (CMYColor) savedInstanceState.getSerializable("cmyColor");
+        setRenderThreadEnabled(savedInstanceState.getBoolean("renderThread"));
         paletteView.myRestoreInstanceState(savedInstanceState);
     }
 
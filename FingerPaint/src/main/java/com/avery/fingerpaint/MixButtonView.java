@@ -4,7 +4,6 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.RectF;
 import android.os.Bundle;
 import android.os.Parcelable;
 import android.view.View;
@@ -12,12 +11,14 @@ import android.view.View;
 /**
  * The view for entering and leaving "mix mode."
  */
-public class MixButtonView extends View
+public class MixButtonView extends View implements SwatchCache.Swatch
 {
     private boolean active;
     private Paint pOutline;
     private Paint pText;
     private Paint pFill;
+    private SwatchCache swatchCache;
+    private SwatchCache.Look look;
 
     public MixButtonView(Context context)
     {
@@ -39,6 +40,8 @@ public class MixButtonView extends View
         pFill = new Paint();
         pFill.setColor(Color.WHITE);
         pFill.setAntiAlias(true);
+
+        look = new SwatchCache.Look();
     }
 
     public void setActive(boolean a)
@@ -47,8 +50,22 @@ public class MixButtonView extends View
         invalidate();
     }
 
+    public void setSwatchCache(SwatchCache cache)
+    {
+        this.swatchCache = cache;
+    }
+
     @Override
     protected void onDraw(Canvas canvas)
+    {
+        if (swatchCache != null)
+            swatchCache.draw(canvas, this, look, getWidth(), getHeight(), 0, active ? 1 : 0);
+        else
+            drawSwatch(canvas);
+    }
+
+    @Override
+    public void drawSwatch(Canvas canvas)
     {
         int highlightColor = active ? Color.RED : Color.WHITE;
         pFill.setColor(highlightColor);
@@ -59,12 +76,6 @@ public class MixButtonView extends View
         float centerX = radius + padding;
         float centerY = radius + padding;
 
-        RectF r = new RectF();
-        r.left = centerX - radius;
-        r.right = centerX + radius;
-        r.top = centerY - radius;
-        r.bottom = centerY + radius;
-
         canvas.drawCircle(centerX, centerY, radius+2, pOutline);
         canvas.drawCircle(centerX, centerY, radius, pFill);
         // Note: Drawing this text is a real hack - since we don't know the exact size
@@ -1,26 +1,22 @@
 package com.avery.fingerpaint;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Matrix;
-import android.graphics.Paint;
-import android.graphics.Path;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 
-import java.io.Externalizable;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectOutput;
-import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * The area where the user paints.
@@ -31,56 +27,190 @@ public class PaintAreaView extends View
     // useful to make special note of them here:
 
     // paths is a list of complete paths, so that they may be saved and restored
-    // on, for example, orientation change.
+    // on, for example, orientation change. While a replay is running, changes to
+    // paths are made holding pathsLock.
     private ArrayList<PaintPath> paths;
+    private final Object pathsLock = new Object();
 
-    // curPaintPath is the path that is currently being drawn, but is not
-    // completed yet.
-    private PaintPath curPaintPath;
+    // pathIndex finds the paths within a region, such as a tile that has to be
+    // redrawn, without checking every path. It's kept in step with paths.
+    private PathIndex pathIndex;
 
-    // scaleMatrix is used to scale all the paths to the view size, since paths are
+    // activeStrokes are the paths currently being drawn, one for each finger on
+    // the screen, oldest first. None are completed yet; each is added to paths
+    // when its finger lifts, so paths stay in the order they were finished.
+    private ArrayList<Stroke> activeStrokes;
+
+    // renderer draws paths scaled to the view size, since paths are
     // stored using abstract coordinates (x=0..1, y=0..1).
-    private Matrix scaleMatrix;
+    private PaintPathRenderer renderer;
+
+    // tiles holds all the completed paths, so that all paths don't have to be
+    // redrawn during onDraw (which is very slow). Tiles are only allocated where
+    // something has been painted.
+    private TiledCanvas tiles;
+    private TiledCanvas.TileSource tileSource;
+
+    // replay redraws the paths onto new tiles on a worker thread after a size
+    // change or restore, so the UI thread isn't blocked. Until it finishes, the
+    // tiles are drawn as far as it has got, with any paths completed in the
+    // meantime drawn directly on top; they're handed to the replay to draw last.
+    private Replay replay;
+
+    // strokeTiles holds activeStrokes, which are drawn onto it one segment at a
+    // time as points are added, so the cost of each frame doesn't grow with the
+    // length of the paths, and all of them are drawn to the view in one pass.
+    // When a path is completed it is erased from here and drawn in one piece
+    // onto tiles, so the result is exactly the same as drawing the whole path.
+    private TiledCanvas strokeTiles;
+    private int tileMemoryBudget;
+
+    // tileConfig is the pixel format of tiles, or null to choose one from the
+    // memory available each time they're created. strokeTiles is transparent,
+    // so it always needs an alpha channel.
+    private Bitmap.Config tileConfig;
+
+    // ink, if set, draws the strokes in progress on a render thread instead, so
+    // touch events are passed straight to it and activeStrokes stays empty. The
+    // paths it finishes are completed here, and it keeps drawing each one until
+    // the frame after it's in the tiles: inkPaths holds those completed since
+    // the last onDraw, and drawnInkPaths those drawn by it, to be released.
+    private InkSurfaceView ink;
+    private ArrayList<PaintPath> inkPaths;
+    private ArrayList<PaintPath> drawnInkPaths;
+    private Runnable releaseInkPaths;
 
-    // bitmap and canvas are used to draw the path as it is created,
-    // so that all paths don't have to be redrawn during onDraw (which is very slow).
-    private Bitmap bitmap;
-    private Canvas canvas;
+    // redoPaths holds the paths that were undone, most recent last, until a new
+    // path is drawn.
+    private ArrayList<PaintPath> redoPaths;
+
+    // checkpoints hold copies of the tiles taken every checkpointInterval paths,
+    // so that undo only has to replay the paths drawn since the last checkpoint.
+    // Each only copies the tiles drawn on since the one before. The oldest are
+    // dropped when together they use more than checkpointMemoryBudget.
+    private ArrayList<Checkpoint> checkpoints;
+    private int checkpointInterval;
+    private int checkpointMemoryBudget;
+
+    // journal, if set, records every completed path (and undo and clear) on disk,
+    // so the painting survives the process being killed.
+    private StrokeJournal journal;
+
+    // simplifyTolerance is how far, in pixels, a removed point may be from the
+    // line between the points kept either side of it. 0 keeps every point.
+    private float simplifyTolerance;
 
     // curColor is the RGB color to use on the current path.
     private int curColor;
 
-    // Two Paints are used, one for paths and one for points, because each are
-    // drawn differently.
-    private Paint pathPaint;
-    private Paint pointPaint;
+    // dirtyRect collects the view-space bounds of everything invalidated since
+    // the last onDraw, so that touch moves only redraw the newly added segments.
+    // invalidatedArea is the pixel area of that region for the last frame drawn.
+    private Rect dirtyRect;
+    private long invalidatedArea;
+    private Rect bounds; // reusable rectangle
+    private Rect strokeBounds; // reusable rectangle
+    private Rect tailSource; // reusable rectangle
+
+    // touchLatency measures from each touch sample to the end of the onDraw that
+    // first shows it, and drawTimes how long each onDraw takes. inputTime is the
+    // time of the oldest sample not yet drawn, or 0 if there isn't one.
+    // touchTimes measures how long each touch event takes to handle, which
+    // grows with the number of fingers down.
+    private LatencyHistogram touchLatency;
+    private LatencyHistogram drawTimes;
+    private LatencyHistogram touchTimes;
+    private long inputTime;
+
+    // predictionTime is how many ms ahead of the latest touch sample each active
+    // stroke is extrapolated, from the finger's recent velocity and acceleration.
+    // The prediction is drawn in onDraw as a tail on the stroke, but is never
+    // part of it: each move replaces it with the real samples and a new one.
+    // 0 turns prediction off.
+    private int predictionTime;
+
+    // perceivedLatency measures from each touch sample to the end of the first
+    // onDraw that showed ink where it was: either the sample itself or a
+    // prediction that came within PREDICTION_TOLERANCE of it, which counts as 0
+    // if it was shown before the finger got there. unpredictedTimes holds the
+    // times of the samples no prediction showed, waiting for the next onDraw.
+    private LatencyHistogram perceivedLatency;
+    private long[] unpredictedTimes;
+    private int unpredictedCount;
 
-    // lastX and lastY are used so that we only act on new touch events
-    // if they differ from the previous touch event by some threshold value.
-    private float lastX;
-    private float lastY;
+    static final float PAINT_RADIUS = 10;
 
-    private static final float THRESHOLD = 3;
-    private static final float PAINT_RADIUS = 10;
+    // The predicted tail has a point every PREDICTION_STEP ms, and is never
+    // longer than MAX_PREDICTION_DISTANCE pixels, so a jerk can't fling it far
+    // from the finger. A prediction within PREDICTION_TOLERANCE pixels of where
+    // the finger turned out to be counts as right.
+    private static final int DEFAULT_PREDICTION_TIME = 16;
+    private static final int PREDICTION_STEP = 4;
+    private static final float MAX_PREDICTION_DISTANCE = 4 * PAINT_RADIUS;
+    private static final float PREDICTION_TOLERANCE = PAINT_RADIUS / 2;
     private static final int BACKGROUND_COLOR = Color.WHITE;
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 20;
+    private static final int DEFAULT_CHECKPOINT_MEMORY_BUDGET = 24 * 1024 * 1024;
+    private static final long REPLAY_CHUNK_NANOS = 4000000;
+
+    // A fully painted canvas may use up to this fraction of the app's memory
+    // class before tiles drop down to RGB_565.
+    private static final int FULL_COLOR_MEMORY_FRACTION = 8;
 
     public PaintAreaView(Context context)
     {
         super(context);
 
         paths = new ArrayList<PaintPath>();
-        scaleMatrix = new Matrix();
+        activeStrokes = new ArrayList<Stroke>();
+        pathIndex = new PathIndex();
+        renderer = new PaintPathRenderer();
+        dirtyRect = new Rect();
+        bounds = new Rect();
+        strokeBounds = new Rect();
+        tailSource = new Rect();
+        touchLatency = new LatencyHistogram("Touch to draw");
+        drawTimes = new LatencyHistogram("Paint area draw");
+        touchTimes = new LatencyHistogram("Touch event");
+        perceivedLatency = new LatencyHistogram("Perceived touch to draw");
+        unpredictedTimes = new long[64];
+        predictionTime = DEFAULT_PREDICTION_TIME;
+        tileMemoryBudget = TiledCanvas.DEFAULT_MEMORY_BUDGET;
+
+        tileSource = new TiledCanvas.TileSource() {
+            @Override
+            public void redrawTile(Canvas c, Rect tileBounds) {
+                // Paths reach up to PAINT_RADIUS times their widest past their
+                // points, so widen the search by that.
+                float padX = (PAINT_RADIUS * PaintPath.MAX_WIDTH + 1) / getWidth();
+                float padY = (PAINT_RADIUS * PaintPath.MAX_WIDTH + 1) / getHeight();
+                int count = pathIndex.query(
+                        (float) tileBounds.left / getWidth() - padX, (float) tileBounds.top / getHeight() - padY,
+                        (float) tileBounds.right / getWidth() + padX, (float) tileBounds.bottom / getHeight() + padY);
+
+                int[] found = pathIndex.getResults();
+                for (int i = 0; i < count; i++)
+                {
+                    renderer.draw(c, paths.get(found[i]));
+                }
+            }
+        };
 
-        pathPaint = new Paint();
-        pathPaint.setAntiAlias(true);
-        pathPaint.setStyle(Paint.Style.STROKE);
-        pathPaint.setStrokeCap(Paint.Cap.ROUND);
-        pathPaint.setStrokeJoin(Paint.Join.ROUND);
-        pathPaint.setStrokeWidth(PAINT_RADIUS * 2);
+        inkPaths = new ArrayList<PaintPath>();
+        drawnInkPaths = new ArrayList<PaintPath>();
+        releaseInkPaths = new Runnable() {
+            @Override
+            public void run() {
+                if (ink != null)
+                    ink.release(drawnInkPaths);
+                drawnInkPaths.clear();
+            }
+        };
 
-        pointPaint = new Paint();
-        pointPaint.setAntiAlias(true);
-        pointPaint.setStyle(Paint.Style.FILL);
+        redoPaths = new ArrayList<PaintPath>();
+        checkpoints = new ArrayList<Checkpoint>();
+        checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+        checkpointMemoryBudget = DEFAULT_CHECKPOINT_MEMORY_BUDGET;
     }
 
     public void setPaintColor(int colorARGB)
@@ -88,11 +218,263 @@ public class PaintAreaView extends View
         this.curColor = colorARGB;
     }
 
+    /**
+     * Hands drawing of the strokes in progress over to ink, which must lie
+     * exactly on top of this view, or takes it back if ink is null. Strokes
+     * already in progress are finished first.
+     */
+    public void setInkSurface(InkSurfaceView ink)
+    {
+        finishActiveStrokes();
+        this.ink = ink;
+        if (ink != null)
+        {
+            ink.setOnStrokeFinishedListener(new InkSurfaceView.OnStrokeFinishedListener() {
+                @Override
+                public void onStrokeFinished(PaintPath path) {
+                    commitPath(path);
+                    inkPaths.add(path);
+                }
+            });
+        }
+    }
+
     public void clear()
     {
-        canvas.drawColor(BACKGROUND_COLOR);
+        cancelReplay();
+        tiles.clear();
+        tiles.setMemoryBudget(tileMemoryBudget);
         paths.clear();
-        invalidate();
+        pathIndex.clear();
+        redoPaths.clear();
+        clearCheckpoints();
+        invalidateAll();
+
+        if (journal != null)
+            journal.clear();
+    }
+
+    public void setJournal(StrokeJournal journal)
+    {
+        this.journal = journal;
+    }
+
+    /**
+     * Adds paths recovered from the journal. They were completed before any
+     * drawn since the view was created, so they go first.
+     */
+    public void addRecoveredPaths(List<PaintPath> recovered)
+    {
+        if (recovered.isEmpty())
+            return;
+
+        cancelReplay();
+        paths.addAll(0, recovered);
+        redoPaths.clear();
+        onPathsReplaced();
+    }
+
+    /**
+     * Removes the most recent path. Returns false if there was nothing to undo.
+     */
+    public boolean undo()
+    {
+        if (paths.isEmpty() || !activeStrokes.isEmpty() || replay != null)
+            return false;
+
+        long start = System.nanoTime();
+        redoPaths.add(paths.remove(paths.size() - 1));
+        pathIndex.removeLast();
+        if (journal != null)
+            journal.undo();
+
+        // Go back to the most recent checkpoint that doesn't include the undone
+        // path, and replay the paths drawn since.
+        Checkpoint checkpoint = null;
+        for (int i = checkpoints.size() - 1; i >= 0 && checkpoint == null; i--)
+        {
+            if (checkpoints.get(i).pathCount <= paths.size())
+                checkpoint = checkpoints.get(i);
+        }
+
+        int replayFrom = 0;
+        if (checkpoint != null)
+        {
+            tiles.restore(checkpoint.snapshot);
+            replayFrom = checkpoint.pathCount;
+        }
+        else
+        {
+            tiles.clear();
+        }
+
+        for (int i = replayFrom; i < paths.size(); )
+        {
+            i = tiles.drawBatch(renderer, paths, i, paths.size());
+        }
+        invalidateAll();
+
+        Log.d("PaintAreaView", "Undo replayed " + (paths.size() - replayFrom) + " of " + paths.size()
+                + " paths in " + (System.nanoTime() - start) / 1000 + " us");
+        return true;
+    }
+
+    /**
+     * Restores the most recently undone path. Returns false if there was nothing to redo.
+     */
+    public boolean redo()
+    {
+        if (redoPaths.isEmpty() || !activeStrokes.isEmpty() || replay != null)
+            return false;
+
+        PaintPath p = redoPaths.remove(redoPaths.size() - 1);
+        tiles.drawPath(renderer, p);
+        paths.add(p);
+        pathIndex.add(p);
+        if (journal != null)
+            journal.append(p);
+
+        renderer.getBounds(p, 0, bounds);
+        dirtyRect.union(bounds);
+        invalidate(bounds);
+        return true;
+    }
+
+    /**
+     * Sets how many paths are drawn between raster checkpoints. Fewer paths
+     * between checkpoints makes undo faster, but uses more memory.
+     */
+    public void setCheckpointInterval(int paths)
+    {
+        this.checkpointInterval = Math.max(1, paths);
+    }
+
+    /**
+     * Sets how many bytes the checkpoints may use before the oldest are dropped.
+     */
+    public void setCheckpointMemoryBudget(int bytes)
+    {
+        this.checkpointMemoryBudget = bytes;
+        trimCheckpoints();
+    }
+
+    /**
+     * The number of pixels that were invalidated for the most recently drawn frame.
+     * Useful for measuring how much of the view each touch event causes to be redrawn.
+     */
+    public long getInvalidatedArea()
+    {
+        return invalidatedArea;
+    }
+
+    /**
+     * Time from each touch event to the end of the onDraw that first showed it.
+     * Touch events are only timed to the millisecond, and the frame still has to
+     * be composited after onDraw, so the lag seen on screen is a little longer.
+     */
+    public LatencyHistogram getTouchLatency()
+    {
+        return touchLatency;
+    }
+
+    /**
+     * Time taken by each onDraw.
+     */
+    public LatencyHistogram getDrawTimes()
+    {
+        return drawTimes;
+    }
+
+    /**
+     * Time taken to handle each touch event, for every finger in it.
+     */
+    public LatencyHistogram getTouchTimes()
+    {
+        return touchTimes;
+    }
+
+    /**
+     * Time from each touch sample to the end of the onDraw that first showed ink
+     * where it was, counting predicted ink that was close enough. Compare it with
+     * getTouchLatency() to see how much prediction hides.
+     */
+    public LatencyHistogram getPerceivedLatency()
+    {
+        return perceivedLatency;
+    }
+
+    /**
+     * Sets how many ms ahead of the finger strokes are predicted and drawn,
+     * to hide the time it takes to show each touch. Predicting further hides
+     * more of it, but the tail overshoots more when the finger turns or stops.
+     * 0 turns prediction off.
+     */
+    public void setPredictionTime(int ms)
+    {
+        this.predictionTime = Math.max(0, ms);
+    }
+
+    /**
+     * Sets how far, in pixels, a point removed from a completed path may be from
+     * the line between the points kept either side of it. The curve drawn through
+     * the points can move somewhat further; the log shows how far. Fewer points
+     * make saving and redrawing faster. 0 disables it.
+     */
+    public void setSimplifyTolerance(float pixels)
+    {
+        this.simplifyTolerance = pixels;
+    }
+
+    /**
+     * Whether the paths are still being redrawn after a size change or restore.
+     */
+    public boolean isReplaying()
+    {
+        return replay != null;
+    }
+
+    /**
+     * Sets how many bytes of tiles the painting may keep before the least recently
+     * used ones are dropped (and redrawn from the paths when next needed).
+     */
+    public void setTileMemoryBudget(int bytes)
+    {
+        this.tileMemoryBudget = bytes;
+        if (tiles != null && replay == null)
+            tiles.setMemoryBudget(bytes);
+    }
+
+    /**
+     * Returns a copy of the completed paths, which can be used on another thread.
+     */
+    public List<PaintPath> copyPaths()
+    {
+        return new ArrayList<PaintPath>(paths);
+    }
+
+    /**
+     * Creates an exporter for the painting with its longer side longSide pixels,
+     * keeping the view's shape. The paint radius is scaled up to match, so the
+     * image looks the same as on screen.
+     */
+    public ImageExporter createExporter(int longSide)
+    {
+        float scale = (float) longSide / Math.max(getWidth(), getHeight());
+        return new ImageExporter(Math.round(getWidth() * scale), Math.round(getHeight() * scale),
+                PAINT_RADIUS * scale);
+    }
+
+    /**
+     * Sets the pixel format of the painting. ARGB_8888 gives full quality and
+     * RGB_565 uses half the memory, at the cost of slight color banding (see
+     * TiledCanvas). null, the default, chooses between them from the memory
+     * available. Changing it redraws the painting.
+     */
+    public void setTileConfig(Bitmap.Config config)
+    {
+        this.tileConfig = config;
+        if (tiles != null && tiles.getConfig() != chooseTileConfig(getWidth(), getHeight()))
+            resetTiles(getWidth(), getHeight());
     }
 
     @Override
@@ -100,83 +482,625 @@ public class PaintAreaView extends View
     {
         super.onSizeChanged(w, h, oldw, oldh);
 
-        scaleMatrix.reset();
-        scaleMatrix.setScale(w, h);
+        renderer.setScale(w, h);
 
-        // Create a new bitmap and associate it with the canvas.
-        bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-        canvas = new Canvas(bitmap);
-        canvas.drawColor(BACKGROUND_COLOR);
+        if (strokeTiles != null)
+            strokeTiles.clear();
 
-        // Redraw any restored paths
-        for (PaintPath p : paths)
-        {
-            p.draw(canvas, scaleMatrix, pathPaint, pointPaint);
-        }
+        strokeTiles = new TiledCanvas(w, h, Color.TRANSPARENT, new TiledCanvas.TileSource() {
+            @Override
+            public void redrawTile(Canvas c, Rect tileBounds) {
+                for (Stroke stroke : activeStrokes)
+                {
+                    renderer.getBounds(stroke.path, 0, strokeBounds);
+                    if (Rect.intersects(strokeBounds, tileBounds))
+                        renderer.draw(c, stroke.path);
+                }
+            }
+        });
+        strokeTiles.setMemoryBudget(tileMemoryBudget);
+
+        resetTiles(w, h);
+
+        // Paths in progress have to be redrawn at the new size.
+        redrawActiveStrokes();
+
+        // A size change redraws the whole view.
+        dirtyRect.set(0, 0, w, h);
     }
 
     @Override
     protected void onDraw(Canvas c)
     {
-        c.drawBitmap(bitmap, 0, 0, null);
+        long start = System.nanoTime();
 
-        if (curPaintPath != null)
+        if (dirtyRect.intersect(0, 0, getWidth(), getHeight()))
+            invalidatedArea = (long) dirtyRect.width() * dirtyRect.height();
+        else
+            invalidatedArea = 0;
+        dirtyRect.setEmpty();
+
+        c.getClipBounds(bounds);
+        if (replay == null)
         {
-            curPaintPath.draw(c, scaleMatrix, pathPaint, pointPaint);
+            tiles.draw(c, bounds);
         }
+        else
+        {
+            synchronized (pathsLock)
+            {
+                tiles.draw(c, bounds);
+
+                // Paths completed since the replay started haven't been reached yet.
+                for (int i = Math.max(replay.pathCount, replay.drawnCount); i < paths.size(); i++)
+                {
+                    renderer.draw(c, paths.get(i));
+                }
+            }
+        }
+
+        if (!activeStrokes.isEmpty())
+        {
+            strokeTiles.draw(c, bounds);
+            drawPredictions(c);
+        }
+
+        drawTimes.record((System.nanoTime() - start) / 1000);
+        long now = SystemClock.uptimeMillis();
+        if (inputTime != 0)
+        {
+            touchLatency.record((now - inputTime) * 1000);
+            inputTime = 0;
+        }
+
+        for (int i = 0; i < unpredictedCount; i++)
+        {
+            perceivedLatency.record((now - unpredictedTimes[i]) * 1000);
+        }
+        unpredictedCount = 0;
+
+        for (int i = 0; i < activeStrokes.size(); i++)
+        {
+            Stroke stroke = activeStrokes.get(i);
+            if (stroke.tailShown && stroke.tailShownTime == 0)
+                stroke.tailShownTime = now;
+        }
+
+        // Released once this frame has been posted, so they're never missing from both.
+        if (!inkPaths.isEmpty())
+        {
+            drawnInkPaths.addAll(inkPaths);
+            inkPaths.clear();
+            post(releaseInkPaths);
+        }
+    }
+
+    // Draws each stroke's predicted tail, unless the finger has stopped: a
+    // stopped finger sends no more moves to replace it, so it's dropped once
+    // it's older than the time it predicts.
+    private void drawPredictions(Canvas c)
+    {
+        long now = SystemClock.uptimeMillis();
+        for (int i = 0; i < activeStrokes.size(); i++)
+        {
+            Stroke stroke = activeStrokes.get(i);
+            stroke.tailShown = stroke.tailStart > 0 && now - stroke.predictedFrom <= 2 * predictionTime;
+            if (stroke.tailShown)
+                drawTail(c, stroke);
+        }
+    }
+
+    /**
+     * Draws the stroke's predicted tail through its own software bitmap, so that
+     * it's the same tapering mesh as the stroke even when c is hardware
+     * accelerated, which can't draw vertices. Each stroke has its own bitmap
+     * because a hardware canvas only uploads bitmaps after onDraw returns.
+     */
+    private void drawTail(Canvas c, Stroke stroke)
+    {
+        Rect b = stroke.tailBounds;
+        if (b.isEmpty())
+            return;
+
+        // The bitmap only grows, to fit the largest tail.
+        if (stroke.tailLayer == null || stroke.tailLayer.getWidth() < b.width()
+                || stroke.tailLayer.getHeight() < b.height())
+        {
+            int w = Math.max(b.width(), stroke.tailLayer == null ? 0 : stroke.tailLayer.getWidth());
+            int h = Math.max(b.height(), stroke.tailLayer == null ? 0 : stroke.tailLayer.getHeight());
+            stroke.tailLayer = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+            stroke.tailCanvas = new Canvas(stroke.tailLayer);
+        }
+
+        stroke.tailLayer.eraseColor(Color.TRANSPARENT);
+        stroke.tailCanvas.save();
+        stroke.tailCanvas.translate(-b.left, -b.top);
+        renderer.drawSegments(stroke.tailCanvas, stroke.tail, stroke.tailStart);
+        stroke.tailCanvas.restore();
+
+        tailSource.set(0, 0, b.width(), b.height());
+        c.drawBitmap(stroke.tailLayer, tailSource, b, null);
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event)
     {
-        float x = event.getX() / getWidth();
-        float y = event.getY() / getHeight();
+        long start = System.nanoTime();
 
-        switch (event.getAction())
+        if (ink != null)
+        {
+            ink.addTouchEvent(event, curColor);
+            touchTimes.record((System.nanoTime() - start) / 1000);
+            return true;
+        }
+
+        // The oldest sample in the event is the one that has waited longest.
+        if (inputTime == 0)
+            inputTime = event.getHistorySize() > 0 ? event.getHistoricalEventTime(0) : event.getEventTime();
+
+        switch (event.getActionMasked())
         {
             case MotionEvent.ACTION_DOWN:
-                onTouchDown(x, y);
-                invalidate();
+                // Strokes left from a gesture that never finished properly.
+                finishActiveStrokes();
+                onTouchDown(event, 0);
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN:
+                onTouchDown(event, event.getActionIndex());
                 break;
             case MotionEvent.ACTION_MOVE:
-                onTouchMove(x, y);
-                invalidate();
+                onTouchMove(event);
                 break;
             case MotionEvent.ACTION_UP:
-                onTouchUp();
+            case MotionEvent.ACTION_POINTER_UP:
+                onTouchUp(event.getPointerId(event.getActionIndex()));
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                // Keep what was drawn before the gesture was taken away.
+                finishActiveStrokes();
                 break;
         }
 
+        touchTimes.record((System.nanoTime() - start) / 1000);
         return true;
     }
 
-    private void onTouchDown(float x, float y)
+    private void onTouchDown(MotionEvent event, int pointerIndex)
     {
-        curPaintPath = new PaintPath(curColor, x, y);
-        lastX = x;
-        lastY = y;
+        Stroke stroke = new Stroke(event.getPointerId(pointerIndex), curColor, event.getX(pointerIndex),
+                event.getY(pointerIndex), event.getPressure(pointerIndex), event.getEventTime(),
+                getWidth(), getHeight());
+        addRecentSample(stroke, event.getX(pointerIndex), event.getY(pointerIndex), event.getEventTime());
+        activeStrokes.add(stroke);
+
+        strokeTiles.drawPath(renderer, stroke.path);
+        invalidateSegments(stroke.path, 0);
     }
 
-    private void onTouchMove(float x, float y)
+    /**
+     * Android batches the samples since the last event into each ACTION_MOVE as
+     * history, for every finger down. All of them are added, and each stroke's
+     * new segments are drawn and invalidated once per event.
+     */
+    private void onTouchMove(MotionEvent event)
     {
-        float dx = Math.abs(x - lastX);
-        float dy = Math.abs(y - lastY);
+        int historySize = event.getHistorySize();
 
-        if (dx > (THRESHOLD / getWidth()) || dy > (THRESHOLD / getHeight()))
+        for (int i = 0; i < event.getPointerCount(); i++)
         {
-            curPaintPath.addPoint(x, y);
-            lastX = x;
-            lastY = y;
+            Stroke stroke = findStroke(event.getPointerId(i));
+            if (stroke == null)
+                continue;
+
+            int firstNew = stroke.path.getPointCount();
+            for (int h = 0; h < historySize; h++)
+            {
+                onTouchSample(stroke, event.getHistoricalX(i, h), event.getHistoricalY(i, h),
+                        event.getHistoricalPressure(i, h), event.getHistoricalEventTime(h));
+            }
+            onTouchSample(stroke, event.getX(i), event.getY(i), event.getPressure(i), event.getEventTime());
+
+            if (stroke.path.getPointCount() > firstNew)
+            {
+                strokeTiles.drawSegments(renderer, stroke.path, firstNew);
+                invalidateSegments(stroke.path, firstNew);
+            }
+            predict(stroke);
+        }
+    }
+
+    /**
+     * Adds a sample at (x, y), in pixels, to the stroke if it's far enough from
+     * the last point.
+     */
+    private void onTouchSample(Stroke stroke, float x, float y, float pressure, long time)
+    {
+        checkPrediction(stroke, x, y, time);
+        addRecentSample(stroke, x, y, time);
+        stroke.addSample(x, y, pressure, time, getWidth(), getHeight());
+    }
+
+    private void addRecentSample(Stroke stroke, float x, float y, long time)
+    {
+        // Only the last three are needed to work out acceleration.
+        for (int i = 0; i < 2; i++)
+        {
+            stroke.recentX[i] = stroke.recentX[i + 1];
+            stroke.recentY[i] = stroke.recentY[i + 1];
+            stroke.recentTimes[i] = stroke.recentTimes[i + 1];
+        }
+        stroke.recentX[2] = x;
+        stroke.recentY[2] = y;
+        stroke.recentTimes[2] = time;
+        stroke.recentCount = Math.min(3, stroke.recentCount + 1);
+    }
+
+    // Records how long the sample took to show, if a prediction already showed
+    // ink close enough to it; otherwise it's recorded at the next onDraw.
+    private void checkPrediction(Stroke stroke, float x, float y, long time)
+    {
+        long ahead = time - stroke.predictedFrom;
+        if (stroke.tailShownTime != 0 && ahead > 0 && ahead <= predictionTime)
+        {
+            float dx = stroke.predictedX(ahead) - x;
+            float dy = stroke.predictedY(ahead) - y;
+            if (dx * dx + dy * dy <= PREDICTION_TOLERANCE * PREDICTION_TOLERANCE)
+            {
+                perceivedLatency.record(Math.max(0, stroke.tailShownTime - time) * 1000);
+                return;
+            }
+        }
+
+        if (unpredictedCount == unpredictedTimes.length)
+            unpredictedTimes = Arrays.copyOf(unpredictedTimes, unpredictedCount * 2);
+        unpredictedTimes[unpredictedCount++] = time;
+    }
+
+    /**
+     * Replaces the stroke's predicted tail with one extrapolated from its latest
+     * samples. The tail continues from where the drawn stroke ends (halfway
+     * between its last two points), through the last point and the latest
+     * sample, to where the finger is expected to be in predictionTime ms.
+     */
+    private void predict(Stroke stroke)
+    {
+        // The old tail is erased whether or not there's a new one.
+        if (stroke.tailStart > 0)
+            invalidateRect(stroke.tailBounds);
+        stroke.tailStart = 0;
+        stroke.tailShownTime = 0;
+
+        if (predictionTime <= 0 || stroke.recentCount < 3)
+            return;
+
+        long dt1 = stroke.recentTimes[1] - stroke.recentTimes[0];
+        long dt2 = stroke.recentTimes[2] - stroke.recentTimes[1];
+        if (dt1 <= 0 || dt2 <= 0)
+            return;
+
+        // Velocity in pixels per ms, and acceleration in pixels per ms squared.
+        float vx1 = (stroke.recentX[1] - stroke.recentX[0]) / dt1;
+        float vy1 = (stroke.recentY[1] - stroke.recentY[0]) / dt1;
+        stroke.velocityX = (stroke.recentX[2] - stroke.recentX[1]) / dt2;
+        stroke.velocityY = (stroke.recentY[2] - stroke.recentY[1]) / dt2;
+        stroke.accelerationX = (stroke.velocityX - vx1) * 2 / (dt1 + dt2);
+        stroke.accelerationY = (stroke.velocityY - vy1) * 2 / (dt1 + dt2);
+        stroke.predictedFrom = stroke.recentTimes[2];
+
+        // Scale the motion down if it would go too far.
+        float dx = stroke.predictedX(predictionTime) - stroke.recentX[2];
+        float dy = stroke.predictedY(predictionTime) - stroke.recentY[2];
+        float distance = (float) Math.sqrt(dx * dx + dy * dy);
+        if (distance > MAX_PREDICTION_DISTANCE)
+        {
+            float scale = MAX_PREDICTION_DISTANCE / distance;
+            stroke.velocityX *= scale;
+            stroke.velocityY *= scale;
+            stroke.accelerationX *= scale;
+            stroke.accelerationY *= scale;
+        }
+
+        PaintPath path = stroke.path;
+        int first = Math.max(0, path.getPointCount() - 2);
+        if (stroke.tail == null)
+            stroke.tail = new PaintPath(path.getColor(), path.getX(first), path.getY(first), path.getWidth(first));
+        else
+            stroke.tail.rewind();
+
+        for (int i = stroke.tail.getPointCount() == 0 ? first : first + 1; i < path.getPointCount(); i++)
+        {
+            stroke.tail.addPoint(path.getX(i), path.getY(i), path.getWidth(i));
+        }
+        stroke.tailStart = stroke.tail.getPointCount();
+
+        float width = getWidth();
+        float height = getHeight();
+        stroke.tail.addPoint(stroke.recentX[2] / width, stroke.recentY[2] / height, stroke.width);
+        for (int ahead = PREDICTION_STEP; ahead < predictionTime + PREDICTION_STEP; ahead += PREDICTION_STEP)
+        {
+            int t = Math.min(ahead, predictionTime);
+            stroke.tail.addPoint(stroke.predictedX(t) / width, stroke.predictedY(t) / height, stroke.width);
+        }
+
+        // Repeated, so that the tail's last curve ends right on it.
+        int last = stroke.tail.getPointCount() - 1;
+        stroke.tail.addPoint(stroke.tail.getX(last), stroke.tail.getY(last), stroke.width);
+
+        renderer.getBounds(stroke.tail, 0, stroke.tailBounds);
+        invalidateRect(stroke.tailBounds);
+
+        // Erase it once it's stale, in case the finger stops.
+        postInvalidateDelayed(2 * predictionTime + 1, stroke.tailBounds.left, stroke.tailBounds.top,
+                stroke.tailBounds.right, stroke.tailBounds.bottom);
+    }
+
+    private Stroke findStroke(int pointerId)
+    {
+        for (int i = 0; i < activeStrokes.size(); i++)
+        {
+            if (activeStrokes.get(i).pointerId == pointerId)
+                return activeStrokes.get(i);
+        }
+        return null;
+    }
+
+    /**
+     * Invalidates only the region touched by the segments added to path along
+     * with points firstIndex onwards.
+     */
+    private void invalidateSegments(PaintPath path, int firstIndex)
+    {
+        renderer.getBounds(path, firstIndex, bounds);
+        dirtyRect.union(bounds);
+        invalidate(bounds);
+    }
+
+    private void invalidateRect(Rect r)
+    {
+        dirtyRect.union(r);
+        invalidate(r);
+    }
+
+    private void invalidateAll()
+    {
+        dirtyRect.set(0, 0, getWidth(), getHeight());
+        invalidate();
+    }
+
+    private void onTouchUp(int pointerId)
+    {
+        Stroke stroke = findStroke(pointerId);
+        if (stroke != null)
+            finishStroke(stroke);
+    }
+
+    private void finishActiveStrokes()
+    {
+        while (!activeStrokes.isEmpty())
+        {
+            finishStroke(activeStrokes.get(0));
+        }
+    }
+
+    private void finishStroke(Stroke stroke)
+    {
+        activeStrokes.remove(stroke);
+        if (stroke.tailStart > 0)
+            invalidateRect(stroke.tailBounds);
+        commitPath(stroke.path);
+    }
+
+    /**
+     * Adds a finished path to the painting.
+     */
+    private void commitPath(PaintPath path)
+    {
+        // Strokes can't be erased one at a time, so the stroke tiles it was drawn
+        // on are redrawn with the strokes still being drawn. The bounds are the
+        // path's as drawn, before it's simplified.
+        if (activeStrokes.isEmpty())
+        {
+            strokeTiles.clear();
+        }
+        else
+        {
+            renderer.getBounds(path, 0, bounds);
+            strokeTiles.redraw(bounds);
+        }
+
+        if (simplifyTolerance > 0)
+            path = simplify(path);
+
+        // Move the new path from the stroke tiles onto the painting, drawn in one piece.
+        // It's drawn before being added to paths, in case a dropped tile has to be
+        // redrawn from paths first. While a replay is running it draws the path
+        // once it has drawn all the earlier ones.
+        if (replay == null)
+        {
+            tiles.drawPath(renderer, path);
+            paths.add(path);
+        }
+        else
+        {
+            synchronized (pathsLock)
+            {
+                paths.add(path);
+            }
+        }
+        pathIndex.add(path);
+        path.trimToSize();
+        if (journal != null)
+            journal.append(path);
+
+        invalidateSegments(path, 0);
+
+        // A running replay changes the tiles under pathsLock, as onDraw reads them.
+        int tileCount;
+        int tileMemoryUsage;
+        synchronized (pathsLock)
+        {
+            tileCount = tiles.getTileCount();
+            tileMemoryUsage = tiles.getMemoryUsage();
+        }
+        Log.d("PaintAreaView", "Committed path: " + path.getPointCount() + " points, "
+                + path.getMemoryUsage() + " bytes, " + tileCount + " tiles in use ("
+                + tileMemoryUsage / 1024 + " KB)");
+
+        // A new path means the undone ones can't be redone, and any checkpoints
+        // taken while they were drawn no longer apply.
+        redoPaths.clear();
+        for (int i = checkpoints.size() - 1; i >= 0; i--)
+        {
+            if (checkpoints.get(i).pathCount >= paths.size())
+                checkpoints.remove(i).snapshot.recycle();
+        }
+
+        if (replay == null && paths.size() % checkpointInterval == 0)
+        {
+            long start = System.nanoTime();
+            Checkpoint checkpoint = new Checkpoint();
+            checkpoint.pathCount = paths.size();
+            checkpoint.snapshot = tiles.snapshot();
+            checkpoints.add(checkpoint);
+            trimCheckpoints();
+
+            Log.d("PaintAreaView", "Checkpoint copied " + checkpoint.snapshot.getCopiedTileCount() + " tiles in "
+                    + (System.nanoTime() - start) / 1000 + " us, " + checkpoints.size() + " checkpoints ("
+                    + tiles.getSnapshotMemoryUsage() / 1024 + " KB)");
+        }
+    }
+
+    private void redrawActiveStrokes()
+    {
+        strokeTiles.clear();
+        for (Stroke stroke : activeStrokes)
+        {
+            strokeTiles.drawPath(renderer, stroke.path);
         }
     }
 
-    private void onTouchUp()
+    private PaintPath simplify(PaintPath path)
+    {
+        long start = System.nanoTime();
+        int originalCount = path.getPointCount();
+        PathSimplifier.Result result =
+                PathSimplifier.simplify(path, simplifyTolerance, getWidth(), getHeight());
+
+        // Redrawing a path costs about the same for each segment, so the fraction
+        // of points removed estimates how much faster it is to replay; it isn't timed.
+        Log.d("PaintAreaView", "Simplified path: removed " + result.removedPoints + " of " + originalCount
+                + " points (estimated " + (100 * result.removedPoints / originalCount)
+                + "% less to replay), max error " + result.maxError + " px from the drawn curve, "
+                + (System.nanoTime() - start) / 1000 + " us");
+        return result.path;
+    }
+
+    /**
+     * Starts drawing all the paths onto new tiles of the given size.
+     */
+    private void resetTiles(int w, int h)
     {
-        // Draw the new path onto the bitmap
-        curPaintPath.draw(canvas, scaleMatrix, pathPaint, pointPaint);
+        cancelReplay();
+
+        if (tiles != null)
+            tiles.clear();
+
+        // Checkpoints are only valid at the size they were taken.
+        clearCheckpoints();
 
-        paths.add(curPaintPath);
-        curPaintPath = null;
+        tiles = new TiledCanvas(w, h, BACKGROUND_COLOR, chooseTileConfig(w, h), tileSource);
+        if (paths.isEmpty())
+        {
+            tiles.setMemoryBudget(tileMemoryBudget);
+            return;
+        }
+
+        // Tiles can't be dropped while the replay is running, because
+        // tileSource would redraw paths the replay hasn't reached yet.
+        tiles.setMemoryBudget(Integer.MAX_VALUE);
+
+        replay = new Replay(tiles, w, h, paths.size());
+        new Thread(replay, "PaintAreaView replay").start();
+    }
+
+    /**
+     * The background is opaque, so the alpha channel of ARGB_8888 tiles is
+     * wasted. Full color is still used while a fully painted canvas would fit
+     * comfortably in memory; otherwise RGB_565 halves the memory used by tiles
+     * and checkpoints, so that twice as many fit in their budgets.
+     */
+    private Bitmap.Config chooseTileConfig(int w, int h)
+    {
+        if (tileConfig != null)
+            return tileConfig;
+
+        ActivityManager am = (ActivityManager) getContext().getSystemService(Context.ACTIVITY_SERVICE);
+        long memoryClass = am.getMemoryClass() * 1024L * 1024L;
+        int tileCount = ((w + TiledCanvas.TILE_SIZE - 1) / TiledCanvas.TILE_SIZE)
+                * ((h + TiledCanvas.TILE_SIZE - 1) / TiledCanvas.TILE_SIZE);
+        long fullColor = (long) tileCount * TiledCanvas.getTileBytes(Bitmap.Config.ARGB_8888);
+        long reduced = (long) tileCount * TiledCanvas.getTileBytes(Bitmap.Config.RGB_565);
+
+        Bitmap.Config config = Bitmap.Config.ARGB_8888;
+        if (fullColor > memoryClass / FULL_COLOR_MEMORY_FRACTION || fullColor > tileMemoryBudget)
+            config = Bitmap.Config.RGB_565;
+
+        Log.d("PaintAreaView", "Using " + config + " tiles: full canvas " + fullColor / 1024 + " KB as ARGB_8888, "
+                + reduced / 1024 + " KB as RGB_565, memory class " + am.getMemoryClass() + " MB");
+        return config;
+    }
+
+    private void cancelReplay()
+    {
+        if (replay == null)
+            return;
+
+        // Once the lock is held the replay isn't part way through drawing,
+        // and it checks for cancellation before drawing anything else.
+        synchronized (pathsLock)
+        {
+            replay.cancelled = true;
+        }
+        replay = null;
+    }
+
+    // Called on the UI thread once the replay has drawn every path.
+    private void finishReplay(Replay finished)
+    {
+        if (finished != replay)
+            return;
+
+        // Any paths completed after the replay thread finished are drawn here.
+        for (int i = finished.drawnCount; i < paths.size(); )
+        {
+            i = tiles.drawBatch(renderer, paths, i, paths.size());
+        }
+
+        replay = null;
+        tiles.setMemoryBudget(tileMemoryBudget);
+        invalidateAll();
+
+        Log.d("PaintAreaView", "Replayed " + paths.size() + " paths in "
+                + (System.nanoTime() - finished.startTime) / 1000000 + " ms, "
+                + finished.replayRenderer.getDrawCalls() + " draw calls");
+    }
+
+    // Dropping the oldest only frees the tiles newer checkpoints don't share.
+    private void trimCheckpoints()
+    {
+        while (!checkpoints.isEmpty() && tiles.getSnapshotMemoryUsage() > checkpointMemoryBudget)
+        {
+            checkpoints.remove(0).snapshot.recycle();
+        }
+    }
+
+    private void clearCheckpoints()
+    {
+        for (Checkpoint c : checkpoints)
+        {
+            c.snapshot.recycle();
+        }
+        checkpoints.clear();
     }
 
     @Override
@@ -185,7 +1109,12 @@ public class PaintAreaView extends View
         Bundle b = new Bundle();
         b.putParcelable("super", super.onSaveInstanceState());
         b.putInt("curColor", curColor);
-        b.putSerializable("paths", this.paths);
+
+        long start = System.nanoTime();
+        byte[] strokes = StrokeCodec.encode(this.paths);
+        b.putByteArray("strokes", strokes);
+        Log.d("PaintAreaView", "Saved " + paths.size() + " paths in " + strokes.length + " bytes, "
+                + (System.nanoTime() - start) / 1000 + " us");
         return b;
     }
 
@@ -195,97 +1124,155 @@ public class PaintAreaView extends View
         Bundle b = (Bundle) state;
         super.onRestoreInstanceState(b.getParcelable("super"));
         this.curColor = b.getInt("curColor");
-        this.paths = (ArrayList<PaintPath>) b.getSerializable("paths");
+        redoPaths.clear();
+        cancelReplay();
+
+        byte[] strokes = b.getByteArray("strokes");
+        if (strokes != null)
+        {
+            try
+            {
+                this.paths = StrokeCodec.decode(strokes);
+            }
+            catch (IOException e)
+            {
+                Log.e("PaintAreaView", "Unable to restore paths", e);
+            }
+        }
+
+        onPathsReplaced();
+    }
+
+    private void onPathsReplaced()
+    {
+        pathIndex.clear();
+        for (PaintPath p : paths)
+        {
+            pathIndex.add(p);
+        }
+
+        // If the size is already known, the restored paths have to be drawn now.
+        if (tiles != null)
+            resetTiles(getWidth(), getHeight());
     }
 
     /**
-     * PaintPath encapsulates a path and a color, and provides a way
-     * to draw itself.
+     * A path being drawn by one finger, and the prediction of where it's going.
+     *
+     * The recent arrays hold the latest three samples, in pixels, whatever their
+     * distance, which the prediction is worked out from. tail holds the points
+     * of the predicted tail; only the segments from tailStart on are drawn, and
+     * there's no tail if it's 0. tailShownTime is when an onDraw first showed
+     * it, or 0 if none has yet. tailLayer is the bitmap drawTail() draws it
+     * through, with tailCanvas drawing into it.
      */
-    private class PaintPath implements Externalizable
+    private static class Stroke extends StrokeBuilder
     {
-        private Path path;
-        private int color;
-        private ArrayList<FloatPair> points;
+        float[] recentX = new float[3];
+        float[] recentY = new float[3];
+        long[] recentTimes = new long[3];
+        int recentCount;
 
-        public PaintPath(int color, float x, float y)
-        {
-            this.color = color;
+        long predictedFrom;
+        float velocityX;
+        float velocityY;
+        float accelerationX;
+        float accelerationY;
 
-            this.points = new ArrayList<FloatPair>();
-            this.points.add(new FloatPair(x, y));
+        PaintPath tail;
+        int tailStart;
+        Rect tailBounds = new Rect();
+        Bitmap tailLayer;
+        Canvas tailCanvas;
+        boolean tailShown;
+        long tailShownTime;
 
-            path = new Path();
-            path.moveTo(x, y);
+        Stroke(int pointerId, int color, float x, float y, float pressure, long time, int width, int height)
+        {
+            super(pointerId, color, x, y, pressure, time, width, height);
         }
 
-        public void addPoint(float x, float y)
+        // Where the finger is predicted to be, in pixels, ahead ms after the
+        // latest sample.
+        float predictedX(long ahead)
         {
-            float lastX = points.get(points.size() - 1).x;
-            float lastY = points.get(points.size() - 1).y;
-            path.quadTo(lastX, lastY, (x + lastX) / 2, (y + lastY) / 2);
-
-            points.add(new FloatPair(x, y));
+            return recentX[2] + velocityX * ahead + accelerationX * ahead * ahead / 2;
         }
 
-        public void draw(Canvas c, Matrix m, Paint pathPaint, Paint pointPaint)
+        float predictedY(long ahead)
         {
-            if (this.points.size() == 1)
-                drawPoint(c, m, pointPaint);
-            else
-                drawPath(c, m, pathPaint);
+            return recentY[2] + velocityY * ahead + accelerationY * ahead * ahead / 2;
         }
+    }
 
-        private void drawPoint(Canvas c, Matrix m, Paint p)
-        {
-            p.setColor(this.color);
+    /**
+     * A copy of the tiles after the first pathCount paths were drawn.
+     */
+    private static class Checkpoint
+    {
+        int pathCount;
+        TiledCanvas.Snapshot snapshot;
+    }
 
-            float[] mValues = new float[9];
-            m.getValues(mValues);
-            float scaleX = mValues[Matrix.MSCALE_X];
-            float scaleY = mValues[Matrix.MSCALE_Y];
+    /**
+     * Draws paths onto tiles on a worker thread, a chunk at a time so that the
+     * UI thread can show its progress in between. It keeps going until it has
+     * also drawn any paths completed while it was running, then hands the tiles
+     * back to the UI thread.
+     */
+    private class Replay implements Runnable
+    {
+        final TiledCanvas target;
+        final PaintPathRenderer replayRenderer;
+        final int pathCount; // number of paths when the replay started
+        final long startTime;
 
-            FloatPair first = this.points.get(0);
-            c.drawCircle(first.x * scaleX, first.y * scaleY, PAINT_RADIUS, p);
-        }
+        // Guarded by pathsLock.
+        int drawnCount;
+        boolean cancelled;
 
-        private void drawPath(Canvas c, Matrix m, Paint p)
+        Replay(TiledCanvas target, int w, int h, int pathCount)
         {
-            p.setColor(this.color);
-
-            Path n = new Path();
-            n.set(this.path);
-            n.transform(m);
-            c.drawPath(n, p);
-        }
+            this.target = target;
+            this.pathCount = pathCount;
+            this.startTime = System.nanoTime();
 
-        // Had to implement the Externalizable interface because Android was attempting
-        // to serialize the Path (even when marked transient). Weird.
-        @Override
-        public void writeExternal(ObjectOutput objectOutput) throws IOException
-        {
-            objectOutput.writeInt(color);
-            objectOutput.writeObject(points);
+            // The renderer reuses its Path, so the replay needs one of its own.
+            replayRenderer = new PaintPathRenderer();
+            replayRenderer.setScale(w, h);
         }
 
         @Override
-        public void readExternal(ObjectInput objectInput) throws IOException, ClassNotFoundException
+        public void run()
         {
-            color = objectInput.readInt();
-            points = (ArrayList<FloatPair>) objectInput.readObject();
-        }
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
 
-        private class FloatPair implements Serializable
-        {
-            float x;
-            float y;
-
-            public FloatPair(float x, float y)
+            while (true)
             {
-                this.x = x;
-                this.y = y;
+                synchronized (pathsLock)
+                {
+                    if (cancelled)
+                        return;
+                    if (drawnCount == paths.size())
+                        break;
+
+                    // Consecutive paths are drawn in batches, since with many short
+                    // ones the cost is mostly in making a call for each.
+                    long chunkStart = System.nanoTime();
+                    while (drawnCount < paths.size() && System.nanoTime() - chunkStart < REPLAY_CHUNK_NANOS)
+                    {
+                        drawnCount = target.drawBatch(replayRenderer, paths, drawnCount, paths.size());
+                    }
+                }
+                postInvalidate();
             }
-        }
 
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    finishReplay(Replay.this);
+                }
+            });
+        }
     }
 }
@@ -0,0 +1,230 @@
+package com.avery.fingerpaint;
+
+import java.util.Arrays;
+
+/**
+ * PaintPath encapsulates the points of a path and a color.
+ * PaintPathRenderer is used to draw it.
+ *
+ * Points are stored packed into a single float array (x0, y0, x1, y1, ...)
+ * so that adding a sample never allocates an object per point. The bounds of
+ * the points are kept up to date as they're added.
+ *
+ * Each point also has a width, as a multiple of the standard stroke width,
+ * which the stroke tapers between. Paths that are the standard width all
+ * along, including every path saved before widths existed, don't store them.
+ */
+public class PaintPath
+{
+    // Number of points the packed array starts out with; it doubles as needed.
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The range of widths a point may have.
+    public static final float MIN_WIDTH = 0.25f;
+    public static final float MAX_WIDTH = 2f;
+
+    private int color;
+    private float[] points;
+    private int pointCount;
+    private float[] widths; // null while every point is width 1
+    private float maxWidth;
+    private float left;
+    private float top;
+    private float right;
+    private float bottom;
+
+    public PaintPath(int color, float x, float y)
+    {
+        this(color, x, y, 1);
+    }
+
+    public PaintPath(int color, float x, float y, float width)
+    {
+        this.color = color;
+        this.points = new float[INITIAL_CAPACITY * 2];
+        addPoint(x, y, width);
+    }
+
+    /**
+     * Creates a complete path from already packed points, e.g. when restoring.
+     */
+    public PaintPath(int color, float[] points, int pointCount)
+    {
+        this(color, points, null, pointCount);
+    }
+
+    /**
+     * Creates a complete path from already packed points and their widths,
+     * which may be null if they're all 1.
+     */
+    public PaintPath(int color, float[] points, float[] widths, int pointCount)
+    {
+        this.color = color;
+        this.points = points;
+        this.widths = widths;
+        this.pointCount = pointCount;
+        computeBounds();
+    }
+
+    public void addPoint(float x, float y)
+    {
+        addPoint(x, y, 1);
+    }
+
+    public void addPoint(float x, float y, float width)
+    {
+        if (pointCount == 0)
+        {
+            left = right = x;
+            top = bottom = y;
+        }
+        else
+        {
+            left = Math.min(left, x);
+            top = Math.min(top, y);
+            right = Math.max(right, x);
+            bottom = Math.max(bottom, y);
+        }
+
+        if (pointCount * 2 == points.length)
+        {
+            points = Arrays.copyOf(points, points.length * 2);
+            if (widths != null)
+                widths = Arrays.copyOf(widths, points.length / 2);
+        }
+
+        // Widths are only stored once one differs from the standard.
+        if (widths == null && width != 1)
+        {
+            widths = new float[points.length / 2];
+            Arrays.fill(widths, 0, pointCount, 1);
+        }
+        if (widths != null)
+            widths[pointCount] = width;
+
+        points[pointCount * 2] = x;
+        points[pointCount * 2 + 1] = y;
+        maxWidth = pointCount == 0 ? width : Math.max(maxWidth, width);
+        pointCount++;
+    }
+
+    public int getColor()
+    {
+        return color;
+    }
+
+    public int getPointCount()
+    {
+        return pointCount;
+    }
+
+    /**
+     * The packed points (x0, y0, x1, y1, ...). Only the first
+     * getPointCount() * 2 entries are meaningful.
+     */
+    public float[] getPoints()
+    {
+        return points;
+    }
+
+    public float getX(int i)
+    {
+        return points[i * 2];
+    }
+
+    public float getY(int i)
+    {
+        return points[i * 2 + 1];
+    }
+
+    /**
+     * The width at point i, as a multiple of the standard stroke width.
+     */
+    public float getWidth(int i)
+    {
+        return widths == null ? 1 : widths[i];
+    }
+
+    /**
+     * The widths of the points, or null if they're all 1. Only the first
+     * getPointCount() entries are meaningful.
+     */
+    public float[] getWidths()
+    {
+        return widths;
+    }
+
+    /**
+     * The greatest width of any point, which the bounds need padding by.
+     */
+    public float getMaxWidth()
+    {
+        return maxWidth;
+    }
+
+    // The bounds of the points, in the same abstract coordinates.
+
+    public float getLeft()
+    {
+        return left;
+    }
+
+    public float getTop()
+    {
+        return top;
+    }
+
+    public float getRight()
+    {
+        return right;
+    }
+
+    public float getBottom()
+    {
+        return bottom;
+    }
+
+    /**
+     * Removes every point but keeps the storage, so that a path that's rebuilt
+     * over and over doesn't allocate. It must have points added before it's used.
+     */
+    public void rewind()
+    {
+        pointCount = 0;
+    }
+
+    /**
+     * Releases any spare capacity once the path is complete.
+     */
+    public void trimToSize()
+    {
+        if (points.length > pointCount * 2)
+            points = Arrays.copyOf(points, pointCount * 2);
+        if (widths != null && widths.length > pointCount)
+            widths = Arrays.copyOf(widths, pointCount);
+    }
+
+    /**
+     * Approximate number of heap bytes held by the point storage
+     * (array headers plus capacity, whether used or not).
+     */
+    public int getMemoryUsage()
+    {
+        return 16 + points.length * 4 + (widths == null ? 0 : 16 + widths.length * 4);
+    }
+
+    private void computeBounds()
+    {
+        left = right = getX(0);
+        top = bottom = getY(0);
+        maxWidth = getWidth(0);
+        for (int i = 1; i < pointCount; i++)
+        {
+            left = Math.min(left, getX(i));
+            top = Math.min(top, getY(i));
+            right = Math.max(right, getX(i));
+            bottom = Math.max(bottom, getY(i));
+            maxWidth = Math.max(maxWidth, getWidth(i));
+        }
+    }
+}
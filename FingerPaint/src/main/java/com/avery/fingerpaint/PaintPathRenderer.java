@@ -0,0 +1,289 @@
+package com.avery.fingerpaint;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Draws PaintPaths onto a Canvas. Paths are stored using abstract coordinates
+ * (x=0..1, y=0..1), so the renderer is given the view size to scale them by.
+ *
+ * Paths taper between the widths of their points, which a stroked Path can't
+ * do, so each is built into a triangle mesh in view space by a
+ * StrokeTessellator and drawn with one drawVertices call. The tessellator
+ * reuses its buffers, so drawing doesn't allocate.
+ *
+ * Hardware accelerated canvases can't draw vertices (before API 29), so on
+ * those the mesh's center line is drawn as round capped lines instead. Tiles,
+ * the predicted tails and the ink surface are all software canvases, so only
+ * paths completed during a replay, drawn straight onto the view until the
+ * replay reaches them, need that.
+ * A path of a single point, a tap, is a round capped point either way.
+ *
+ * Replaying many short paths is mostly per call overhead, so batch() gathers
+ * consecutive paths that can be drawn with one call, which drawBatch() draws:
+ * paths of more than one point make one mesh together, whatever their colors,
+ * and points of the same color and width one drawPoints call. Each shape is
+ * still blended in the same order, so the pixels are exactly the same as
+ * drawing the paths one at a time.
+ */
+public class PaintPathRenderer
+{
+    // The colors come from the mesh's vertices.
+    private Paint meshPaint;
+    private Paint linePaint;
+
+    private Paint pointPaint;
+
+    private StrokeTessellator tessellator;
+    private float scaleX;
+    private float scaleY;
+
+    // The batch gathered by batch(): a mesh in the tessellator, the points in
+    // batchPoints (x, y pairs in pixels), or a single path to draw normally.
+    // Drawing anything else in between replaces it. point is where a single
+    // point is scaled to.
+    private int batchKind;
+    private float[] batchPoints;
+    private int batchPointCount;
+    private PaintPath batchPath;
+    private float[] point;
+
+    // drawCalls counts the Canvas calls made, to see how well paths are batched.
+    private long drawCalls;
+
+    private static final int BATCH_MESH = 0;
+    private static final int BATCH_POINTS = 1;
+    private static final int BATCH_PATH = 2;
+
+    public PaintPathRenderer()
+    {
+        meshPaint = new Paint();
+
+        linePaint = new Paint();
+        linePaint.setAntiAlias(true);
+        linePaint.setStyle(Paint.Style.STROKE);
+        linePaint.setStrokeCap(Paint.Cap.ROUND);
+
+        pointPaint = new Paint();
+        pointPaint.setAntiAlias(true);
+        pointPaint.setStyle(Paint.Style.STROKE);
+        pointPaint.setStrokeCap(Paint.Cap.ROUND);
+
+        batchPoints = new float[64];
+        point = new float[2];
+        tessellator = new StrokeTessellator();
+    }
+
+    public void setScale(float scaleX, float scaleY)
+    {
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        tessellator.setScale(scaleX, scaleY, PaintAreaView.PAINT_RADIUS);
+    }
+
+    /**
+     * Draws the complete path.
+     */
+    public void draw(Canvas c, PaintPath p)
+    {
+        drawMesh(c, p, 0);
+    }
+
+    /**
+     * Draws only the segments that were added to the path along with points
+     * firstIndex onwards (firstIndex >= 1). Drawing the segments as points are
+     * added covers the same area as draw().
+     */
+    public void drawSegments(Canvas c, PaintPath p, int firstIndex)
+    {
+        drawMesh(c, p, firstIndex);
+    }
+
+    /**
+     * Gathers paths from onwards (up to to) that can be drawn together, and
+     * returns the index of the first one left out. At least one is always
+     * gathered. drawBatch() then draws them, on as many canvases as needed,
+     * until anything else is drawn.
+     */
+    public int batch(List<PaintPath> paths, int from, int to)
+    {
+        PaintPath first = paths.get(from);
+        int i = from;
+        if (first.getPointCount() == 1)
+        {
+            batchKind = BATCH_POINTS;
+            batchPointCount = 0;
+            while (i < to && isSamePoint(paths.get(i), first))
+            {
+                PaintPath p = paths.get(i);
+                if ((batchPointCount + 1) * 2 > batchPoints.length)
+                    batchPoints = Arrays.copyOf(batchPoints, batchPoints.length * 2);
+                batchPoints[batchPointCount * 2] = p.getX(0) * scaleX;
+                batchPoints[batchPointCount * 2 + 1] = p.getY(0) * scaleY;
+                batchPointCount++;
+                i++;
+            }
+            batchPath = first;
+            return i;
+        }
+
+        tessellator.reset();
+        while (i < to && paths.get(i).getPointCount() > 1 && tessellator.append(paths.get(i)))
+        {
+            i++;
+        }
+        if (i > from)
+        {
+            batchKind = BATCH_MESH;
+            return i;
+        }
+
+        // Too long to fit in one mesh even on its own.
+        batchKind = BATCH_PATH;
+        batchPath = first;
+        return from + 1;
+    }
+
+    /**
+     * Draws the paths gathered by the last batch(). c mustn't be hardware
+     * accelerated.
+     */
+    public void drawBatch(Canvas c)
+    {
+        switch (batchKind)
+        {
+            case BATCH_MESH:
+                drawVertices(c);
+                break;
+            case BATCH_POINTS:
+                setPointPaint(batchPath);
+                c.drawPoints(batchPoints, 0, batchPointCount * 2, pointPaint);
+                drawCalls++;
+                break;
+            case BATCH_PATH:
+                draw(c, batchPath);
+                break;
+        }
+    }
+
+    public long getDrawCalls()
+    {
+        return drawCalls;
+    }
+
+    /**
+     * Sets out to the view-space bounds of the segments added along with points
+     * firstIndex onwards, or the whole path if firstIndex is 0. The segment for
+     * point i runs between the midpoints around point i - 1, so it lies within
+     * the bounds of points i - 2 to i.
+     */
+    public void getBounds(PaintPath p, int firstIndex, Rect out)
+    {
+        if (firstIndex == 0)
+        {
+            setPaddedBounds(p, p.getLeft(), p.getTop(), p.getRight(), p.getBottom(), out);
+            return;
+        }
+
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+
+        for (int i = Math.max(0, firstIndex - 2); i < p.getPointCount(); i++)
+        {
+            minX = Math.min(minX, p.getX(i));
+            minY = Math.min(minY, p.getY(i));
+            maxX = Math.max(maxX, p.getX(i));
+            maxY = Math.max(maxY, p.getY(i));
+        }
+        setPaddedBounds(p, minX, minY, maxX, maxY, out);
+    }
+
+    private void setPaddedBounds(PaintPath p, float minX, float minY, float maxX, float maxY, Rect out)
+    {
+        // Pad by the widest the path gets, plus a pixel for anti-aliasing.
+        int pad = (int) Math.ceil(PaintAreaView.PAINT_RADIUS * p.getMaxWidth()) + 1;
+        out.left = (int) Math.floor(minX * scaleX) - pad;
+        out.top = (int) Math.floor(minY * scaleY) - pad;
+        out.right = (int) Math.ceil(maxX * scaleX) + pad;
+        out.bottom = (int) Math.ceil(maxY * scaleY) + pad;
+    }
+
+    private void drawMesh(Canvas c, PaintPath p, int firstIndex)
+    {
+        if (p.getPointCount() == 1)
+        {
+            // The same as a batch of one point.
+            point[0] = p.getX(0) * scaleX;
+            point[1] = p.getY(0) * scaleY;
+            setPointPaint(p);
+            c.drawPoints(point, 0, 2, pointPaint);
+            drawCalls++;
+            return;
+        }
+
+        // Only a path too long for one mesh takes more than one go.
+        int next = firstIndex;
+        do
+        {
+            next = tessellator.tessellate(p, next);
+            if (c.isHardwareAccelerated())
+                drawLines(c, p.getColor());
+            else
+                drawVertices(c);
+        }
+        while (next < p.getPointCount());
+    }
+
+    private void drawVertices(Canvas c)
+    {
+        c.drawVertices(Canvas.VertexMode.TRIANGLES, tessellator.getVertexCount() * 2,
+                tessellator.getVertices(), 0, null, 0, tessellator.getColors(), 0,
+                tessellator.getIndices(), 0, tessellator.getIndexCount(), meshPaint);
+        drawCalls++;
+    }
+
+    // Points are drawn in the path's color, opaque as the mesh is, and as wide
+    // as its single point.
+    private void setPointPaint(PaintPath p)
+    {
+        pointPaint.setColor(p.getColor() | 0xff000000);
+        pointPaint.setStrokeWidth(2 * PaintAreaView.PAINT_RADIUS * p.getWidth(0));
+    }
+
+    private static boolean isSamePoint(PaintPath p, PaintPath first)
+    {
+        return p.getPointCount() == 1 && p.getColor() == first.getColor() && p.getWidth(0) == first.getWidth(0);
+    }
+
+    // Each line is as wide as the average of the widths at its ends.
+    private void drawLines(Canvas c, int color)
+    {
+        float[] line = tessellator.getLine();
+        int count = tessellator.getLineCount();
+
+        linePaint.setColor(color);
+        if (count == 1)
+        {
+            linePaint.setStyle(Paint.Style.FILL);
+            c.drawCircle(line[0], line[1], line[2], linePaint);
+            linePaint.setStyle(Paint.Style.STROKE);
+            drawCalls++;
+            return;
+        }
+
+        for (int k = 1; k < count; k++)
+        {
+            int a = (k - 1) * 3;
+            int b = k * 3;
+            linePaint.setStrokeWidth(line[a + 2] + line[b + 2]);
+            c.drawLine(line[a], line[a + 1], line[b], line[b + 1], linePaint);
+        }
+        drawCalls += count - 1;
+    }
+}
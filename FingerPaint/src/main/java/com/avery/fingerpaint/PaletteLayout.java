@@ -0,0 +1,131 @@
+package com.avery.fingerpaint;
+
+/**
+ * Works out where PaletteView's children go: the selector in the middle of the
+ * bottom edge with the mix button to its right, the primary paints on a wheel
+ * around it, and the custom paints on a larger wheel outside that. The wheels
+ * turn by the rotation angle, and the whole palette moves down by an offset,
+ * which is how it's animated in and out.
+ *
+ * It doesn't use Android, so that working out a frame of the animation can be
+ * benchmarked on its own. The bounds of each child are kept as four floats
+ * (left, top, right, bottom), in the order of the constants below, followed
+ * by the custom paints in order.
+ */
+public class PaletteLayout
+{
+    public static final int SELECTOR = 0;
+    public static final int MIX_BUTTON = 1;
+    public static final int CYAN = 2;
+    public static final int MAGENTA = 3;
+    public static final int YELLOW = 4;
+    public static final int FIRST_CUSTOM_PAINT = 5;
+
+    // The custom paints' wheel is this many pixels larger than the primaries'.
+    private static final float CUSTOM_PAINT_SPACING = 120f;
+
+    private float[] bounds = new float[FIRST_CUSTOM_PAINT * 4];
+    private float axisX;
+    private float axisY;
+    private float hiddenOffset;
+
+    /**
+     * Positions the children in a view width by height pixels, with the wheels
+     * turned by rotationAngle degrees and everything moved down by offsetY.
+     */
+    public void layout(float width, float height, float rotationAngle, float offsetY, int customPaintCount)
+    {
+        int size = (FIRST_CUSTOM_PAINT + customPaintCount) * 4;
+        if (bounds.length < size)
+            bounds = new float[size];
+
+        float shortSide = width < height ? width : height;
+        float radius = shortSide / 4f;
+        axisX = width / 2f;
+        axisY = height - (radius / 2) + offsetY;
+
+        layoutCenter(radius);
+        layoutRight(radius);
+        layoutCircle(CYAN, 2, radius, rotationAngle);
+        layoutCircle(MAGENTA, 1, radius, rotationAngle);
+        layoutCircle(YELLOW, 0, radius, rotationAngle);
+        layoutCustomPaints(customPaintCount, radius + CUSTOM_PAINT_SPACING, rotationAngle);
+    }
+
+    /**
+     * How far down the palette moves to hide, leaving the top of the selector showing.
+     */
+    public float getHiddenOffset()
+    {
+        return hiddenOffset;
+    }
+
+    public float getLeft(int child)
+    {
+        return bounds[child * 4];
+    }
+
+    public float getTop(int child)
+    {
+        return bounds[child * 4 + 1];
+    }
+
+    public float getRight(int child)
+    {
+        return bounds[child * 4 + 2];
+    }
+
+    public float getBottom(int child)
+    {
+        return bounds[child * 4 + 3];
+    }
+
+    private void layoutCenter(float radius)
+    {
+        float childRadius = radius / 2;
+        hiddenOffset = childRadius * 0.8f;
+        setBounds(SELECTOR, axisX - childRadius, axisY - childRadius, axisX + childRadius, axisY + childRadius);
+    }
+
+    private void layoutRight(float radius)
+    {
+        float offsetX = radius / 2;
+        float childRadius = radius / 5f;
+        setBounds(MIX_BUTTON, axisX + offsetX, axisY - childRadius,
+                axisX + offsetX + childRadius * 2, axisY + childRadius);
+    }
+
+    private void layoutCircle(int child, int index, float radius, float rotationAngle)
+    {
+        float angle = 2.0f * (float)Math.PI * (index / 8.0f + 1f/8f - rotationAngle/360f);
+        layoutOnWheel(child, angle, radius, radius / 3);
+    }
+
+    private void layoutCustomPaints(int count, float radius, float rotationAngle)
+    {
+        float angleOffset = 0.25f - (0.5f * (count - 1)) / 24f;
+        for (int i = 0; i < count; i++)
+        {
+            float angle = 2.0f * (float)Math.PI * (i / 24.0f + angleOffset - rotationAngle/360f);
+            layoutOnWheel(FIRST_CUSTOM_PAINT + i, angle, radius, radius / 10);
+        }
+    }
+
+    // Centers the child on the wheel of the given radius, at angle radians
+    // anticlockwise from the right.
+    private void layoutOnWheel(int child, float angle, float radius, float childRadius)
+    {
+        float childCenterX = radius * (float)Math.cos(angle) + axisX;
+        float childCenterY = -radius * (float)Math.sin(angle) + axisY;
+        setBounds(child, childCenterX - childRadius, childCenterY - childRadius,
+                childCenterX + childRadius, childCenterY + childRadius);
+    }
+
+    private void setBounds(int child, float left, float top, float right, float bottom)
+    {
+        bounds[child * 4] = left;
+        bounds[child * 4 + 1] = top;
+        bounds[child * 4 + 2] = right;
+        bounds[child * 4 + 3] = bottom;
+    }
+}
@@ -2,10 +2,10 @@ package com.avery.fingerpaint;
 
 import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
+import android.animation.ValueAnimator;
 import android.content.Context;
-import android.graphics.RectF;
+import android.graphics.Canvas;
 import android.os.Bundle;
-import android.util.FloatMath;
 import android.view.View;
 import android.view.ViewGroup;
 
@@ -27,12 +27,15 @@ public class PaletteView extends ViewGroup
     }
 
     private boolean paletteVisible;
-    private float axisX;
-    private float axisY;
     private float rotationAngle;
     private float offsetY;
     private float translateY;
-    private RectF rectangle; // reusable rectangle
+    private PaletteLayout layout;
+
+    // While animating is set, children are moved by translating them instead of
+    // laying them out again, which would measure and lay out everything on every
+    // frame. Their positions are the same either way.
+    private boolean animating;
 
     private PrimaryPaintView cyanView;
     private PrimaryPaintView magentaView;
@@ -46,6 +49,23 @@ public class PaletteView extends ViewGroup
     private List<CustomPaintView> selectedCustomPaintViews;
     private CustomPaintView currentCustomPaintView;
 
+    // mixer keeps the mix of selectedCustomPaintViews up to date while in mix
+    // mode, as paints are selected and deselected.
+    private ColorMixer mixer;
+
+    // swatchCache draws every child, so that on each frame of the animation
+    // they're copied from bitmaps instead of drawn from scratch.
+    private SwatchCache swatchCache;
+
+    // frameTimes measures each frame of the palette animation, from the animator
+    // updating it to the end of drawing it, and frameIntervals the time from one
+    // frame to the next. frameStart and lastFrameStart are 0 when there's no
+    // frame in progress or before it.
+    private LatencyHistogram frameTimes;
+    private LatencyHistogram frameIntervals;
+    private long frameStart;
+    private long lastFrameStart;
+
     private static final int MIN_CUSTOM_COLORS = 2;
     private static final int MAX_CUSTOM_COLORS = 11;
 
@@ -59,7 +79,11 @@ public class PaletteView extends ViewGroup
         selectedCustomPaintViews = new ArrayList<CustomPaintView>();
         inMixMode = false;
         rotationAngle = 0;
-        rectangle = new RectF();
+        layout = new PaletteLayout();
+        mixer = new ColorMixer(ColorMixer.MODEL_ADDITIVE);
+        swatchCache = new SwatchCache();
+        frameTimes = new LatencyHistogram("Palette frame");
+        frameIntervals = new LatencyHistogram("Palette frame interval");
     }
 
     @Override
@@ -71,30 +95,35 @@ public class PaletteView extends ViewGroup
     public void setCyanView(PrimaryPaintView v)
     {
         this.cyanView = v;
+        v.setSwatchCache(swatchCache);
         addView(v);
     }
 
     public void setMagentaView(PrimaryPaintView v)
     {
         this.magentaView = v;
+        v.setSwatchCache(swatchCache);
         addView(v);
     }
 
     public void setYellowView(PrimaryPaintView v)
     {
         this.yellowView = v;
+        v.setSwatchCache(swatchCache);
         addView(v);
     }
 
     public void setSelectorView(SelectorView v)
     {
         this.selectorView = v;
+        v.setSwatchCache(swatchCache);
         addView(v);
     }
 
     public void setMixButtonView(MixButtonView v)
     {
         this.mixButtonView = v;
+        v.setSwatchCache(swatchCache);
         addView(v);
     }
 
@@ -115,6 +144,7 @@ public class PaletteView extends ViewGroup
             return null;
 
         CustomPaintView v = new CustomPaintView(getContext());
+        v.setSwatchCache(swatchCache);
 
         for (CustomPaintView c : customPaintViews)
         {
@@ -148,12 +178,14 @@ public class PaletteView extends ViewGroup
                     {
                         cview.setSelected(true);
                         selectedCustomPaintViews.add(cview);
+                        mixer.add(cview.getColor());
                         mixSelectedColors();
                     }
                     else
                     {
                         cview.setSelected(false);
                         selectedCustomPaintViews.remove(cview);
+                        mixer.remove(cview.getColor());
                         mixSelectedColors();
                     }
                 }
@@ -196,12 +228,16 @@ public class PaletteView extends ViewGroup
         this.inMixMode = m;
         mixButtonView.setActive(inMixMode);
 
+        // Paints can't be edited in mix mode, so their colors stay as added.
+        if (m)
+            rebuildMixer();
+
         if (!m && selectedCustomPaintViews.size() > 1)
         {
             // Leaving mix mode, and user has actually selected multiple paints to mix...
             // (Don't bother mixing and adding a paint if they didn't select multiple.)
 
-            int mixedColor = mixColors(selectedCustomPaintViews);
+            int mixedColor = mixer.getMixedColor();
 
             // Try to create a new CustomPaintView
             CustomPaintView v = this.addCustomPaintView();
@@ -228,6 +264,16 @@ public class PaletteView extends ViewGroup
         return this.inMixMode;
     }
 
+    /**
+     * Sets how paints are mixed, one of the ColorMixer MODEL_ constants.
+     */
+    public void setMixModel(int model)
+    {
+        mixer.setModel(model);
+        if (inMixMode)
+            mixSelectedColors();
+    }
+
     public void setOnSelectedColorChangeListener(OnSelectedColorChangeListener l)
     {
         this.listener = l;
@@ -243,6 +289,32 @@ public class PaletteView extends ViewGroup
         return currentCustomPaintView.getColor();
     }
 
+    /**
+     * Time from each frame of the palette animation starting to it being drawn.
+     */
+    public LatencyHistogram getFrameTimes()
+    {
+        return frameTimes;
+    }
+
+    /**
+     * Time between successive frames of the palette animation. At 60 fps this
+     * should be close to 16.7 ms; longer intervals are dropped frames.
+     */
+    public LatencyHistogram getFrameIntervals()
+    {
+        return frameIntervals;
+    }
+
+    /**
+     * The cache the children are drawn through, which counts how often they
+     * could be copied instead of drawn.
+     */
+    public SwatchCache getSwatchCache()
+    {
+        return swatchCache;
+    }
+
     /**
      * Shows or hides the Palette.
      */
@@ -268,37 +340,55 @@ public class PaletteView extends ViewGroup
         animatePalette(0, translateY, 0, 180, 1f, 0f);
     }
 
-    /**
-     * Called reflectively by Animator
-     */
-    private void setRotationAngle(float angle)
+    private void animatePalette(final float fromY, final float toY, final float fromAngle, final float toAngle,
+                                float fromAlpha, float toAlpha)
     {
-        rotationAngle = angle;
-        requestLayout();
-    }
+        ValueAnimator paletteAnimator = ValueAnimator.ofFloat(0f, 1f);
+        paletteAnimator.setDuration(500);
+        paletteAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animator) {
+                float fraction = animator.getAnimatedFraction();
+                rotationAngle = fromAngle + (toAngle - fromAngle) * fraction;
+                offsetY = fromY + (toY - fromY) * fraction;
+                onAnimationFrame();
+            }
+        });
 
-    /**
-     * Called reflectively by Animator
-     */
-    private void setOffsetY(float y)
-    {
-        offsetY = y;
+        ObjectAnimator mixButtonAlpha = ObjectAnimator.ofFloat(mixButtonView, View.ALPHA, fromAlpha, toAlpha);
+        mixButtonAlpha.setDuration(100);
+
+        AnimatorSet animation = new AnimatorSet();
+        animation.playTogether(paletteAnimator, mixButtonAlpha);
+        animation.start();
+
+        // The wait for the first frame isn't part of the animation's frame rate.
+        lastFrameStart = 0;
     }
 
-    private void animatePalette(float fromY, float toY, float fromAngle, float toAngle, float fromAlpha, float toAlpha)
+    private void onAnimationFrame()
     {
-        ObjectAnimator rotationAnimator = ObjectAnimator.ofFloat(this, "rotationAngle", fromAngle, toAngle);
-        rotationAnimator.setDuration(500);
+        long now = System.nanoTime();
+        if (lastFrameStart != 0)
+            frameIntervals.record((now - lastFrameStart) / 1000);
+        frameStart = now;
+        lastFrameStart = now;
 
-        ObjectAnimator translateAnimator = ObjectAnimator.ofFloat(this, "offsetY", fromY, toY);
-        translateAnimator.setDuration(500);
+        animating = true;
+        positionChildren();
+        animating = false;
+    }
 
-        ObjectAnimator mixButtonAlpha = ObjectAnimator.ofFloat(mixButtonView, "alpha", fromAlpha, toAlpha);
-        mixButtonAlpha.setDuration(100);
+    @Override
+    protected void dispatchDraw(Canvas canvas)
+    {
+        super.dispatchDraw(canvas);
 
-        AnimatorSet animation = new AnimatorSet();
-        animation.playTogether(rotationAnimator, translateAnimator, mixButtonAlpha);
-        animation.start();
+        if (frameStart != 0)
+        {
+            frameTimes.record((System.nanoTime() - frameStart) / 1000);
+            frameStart = 0;
+        }
     }
 
     @Override
@@ -316,82 +406,39 @@ public class PaletteView extends ViewGroup
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom)
     {
-        float width = getWidth();
-        float height = getHeight();
-        float shortSide = width < height ? width : height;
-
-        float radius = shortSide / 4f;
-        this.axisX = width / 2f;
-        this.axisY = height - (radius / 2) + offsetY;
-
-        layoutCenter(this.selectorView, radius);
-        layoutRight(this.mixButtonView, radius);
-        layoutCircle(this.cyanView, 2, radius);
-        layoutCircle(this.magentaView, 1, radius);
-        layoutCircle(this.yellowView, 0, radius);
-        layoutCustomPaints(this.customPaintViews, radius + 120f);
+        positionChildren();
     }
 
-    private void layoutCenter(View child, float radius)
+    private void positionChildren()
     {
-        float childRadius = radius / 2;
-        this.translateY = childRadius * 0.8f;
-
-        rectangle.left = axisX - childRadius;
-        rectangle.right = axisX + childRadius;
-        rectangle.top = axisY - childRadius;
-        rectangle.bottom = axisY + childRadius;
-
-        child.layout((int)rectangle.left, (int)rectangle.top, (int)rectangle.right, (int)rectangle.bottom);
-    }
-
-    private void layoutRight(View child, float radius)
-    {
-        float offsetX = radius / 2;
-        float childRadius = radius / 5f;
-
-        rectangle.left = axisX + offsetX;
-        rectangle.right = axisX + offsetX + childRadius * 2;
-        rectangle.top = axisY - childRadius;
-        rectangle.bottom = axisY + childRadius;
-
-        child.layout((int)rectangle.left, (int)rectangle.top, (int)rectangle.right, (int)rectangle.bottom);
-    }
+        layout.layout(getWidth(), getHeight(), rotationAngle, offsetY, customPaintViews.size());
+        translateY = layout.getHiddenOffset();
 
-    private void layoutCircle(View child, int index, float radius)
-    {
-        float angle = 2.0f * (float)Math.PI * (index / 8.0f + 1f/8f - rotationAngle/360f);
-
-        float childRadius = radius / 3;
-        float childCenterX = radius * FloatMath.cos(angle) + axisX;
-        float childCenterY = -radius * FloatMath.sin(angle) + axisY;
-
-        rectangle.left = childCenterX - childRadius;
-        rectangle.right = childCenterX + childRadius;
-        rectangle.top = childCenterY - childRadius;
-        rectangle.bottom = childCenterY + childRadius;
-
-        child.layout((int)rectangle.left, (int)rectangle.top, (int)rectangle.right, (int)rectangle.bottom);
+        place(selectorView, PaletteLayout.SELECTOR);
+        place(mixButtonView, PaletteLayout.MIX_BUTTON);
+        place(cyanView, PaletteLayout.CYAN);
+        place(magentaView, PaletteLayout.MAGENTA);
+        place(yellowView, PaletteLayout.YELLOW);
+        for (int i = 0; i < customPaintViews.size(); i++)
+        {
+            place(customPaintViews.get(i), PaletteLayout.FIRST_CUSTOM_PAINT + i);
+        }
     }
 
-    private void layoutCustomPaints(List<CustomPaintView> views, float radius)
+    // Moves the child to where the layout puts it, by translating it while animating.
+    private void place(View child, int index)
     {
-        for (int i = 0; i < views.size(); i++)
+        if (animating)
         {
-            View child = views.get(i);
-            float angleOffset = 0.25f - (0.5f * (views.size() - 1)) / 24f;
-            float angle = 2.0f * (float)Math.PI * (i / 24.0f + angleOffset - rotationAngle/360f);
-
-            float childRadius = radius / 10;
-            float childCenterX = radius * FloatMath.cos(angle) + axisX;
-            float childCenterY = -radius * FloatMath.sin(angle) + axisY;
-
-            rectangle.left = childCenterX - childRadius;
-            rectangle.right = childCenterX + childRadius;
-            rectangle.top = childCenterY - childRadius;
-            rectangle.bottom = childCenterY + childRadius;
-
-            child.layout((int)rectangle.left, (int)rectangle.top, (int)rectangle.right, (int)rectangle.bottom);
+            child.setTranslationX(layout.getLeft(index) - child.getLeft());
+            child.setTranslationY(layout.getTop(index) - child.getTop());
+        }
+        else
+        {
+            child.layout((int)layout.getLeft(index), (int)layout.getTop(index),
+                    (int)layout.getRight(index), (int)layout.getBottom(index));
+            child.setTranslationX(0);
+            child.setTranslationY(0);
         }
     }
 
@@ -485,36 +532,22 @@ public class PaletteView extends ViewGroup
         }
 
         // Let the app update other things that depend on the palette color.
-        if (listener != null)
-            listener.onSelectedColorChange(mixColors(selectedCustomPaintViews));
+        rebuildMixer();
+        mixSelectedColors();
     }
 
     private void mixSelectedColors()
     {
         if (listener != null)
-            listener.onSelectedColorChange(mixColors(selectedCustomPaintViews));
+            listener.onSelectedColorChange(mixer.getMixedColor());
     }
 
-    private static int mixColors(List<CustomPaintView> views)
+    private void rebuildMixer()
     {
-        // Simple algorithm for mixing N colors in the subtractive color space...
-        // I made it up because I wasn't satisfied with what I found online.
-        float c = 0;
-        float m = 0;
-        float y = 0;
-
-        for (CustomPaintView v : views)
+        mixer.clear();
+        for (int i = 0; i < selectedCustomPaintViews.size(); i++)
         {
-            CMYColor color = CMYColor.fromRGB(v.getColor());
-            c += color.getC();
-            m += color.getM();
-            y += color.getY();
+            mixer.add(selectedCustomPaintViews.get(i).getColor());
         }
-        return CMYColor.toRGB(clamp(c), clamp(m), clamp(y));
-    }
-
-    private static float clamp(float f)
-    {
-        return Math.min(1f, f);
     }
 }
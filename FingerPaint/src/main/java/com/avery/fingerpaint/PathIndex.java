@@ -0,0 +1,155 @@
+package com.avery.fingerpaint;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the abstract coordinate space (x=0..1, y=0..1) that finds
+ * the paths intersecting a rectangle without checking every path.
+ *
+ * Paths are identified by their position in the list of paths, and are added
+ * and removed at the end of it, in the same order as the list. Each grid cell
+ * keeps the indexes of the paths whose bounds overlap it, in ascending order.
+ */
+public class PathIndex
+{
+    public static final int DEFAULT_GRID_SIZE = 32;
+
+    private int gridSize;
+    private int[][] cells;
+    private int[] cellCounts;
+
+    // The bounds of every path, four floats (left, top, right, bottom) per path.
+    private float[] bounds;
+    private int size;
+
+    // query() collects its results here. marks records the query that last found
+    // each path, so a path overlapping several cells is only reported once.
+    private int[] results;
+    private int[] marks;
+    private int queryId;
+
+    public PathIndex()
+    {
+        this(DEFAULT_GRID_SIZE);
+    }
+
+    public PathIndex(int gridSize)
+    {
+        this.gridSize = gridSize;
+        cells = new int[gridSize * gridSize][];
+        cellCounts = new int[gridSize * gridSize];
+        bounds = new float[64 * 4];
+        results = new int[64];
+        marks = new int[64];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Adds p as the path following all those already added.
+     */
+    public void add(PaintPath p)
+    {
+        if (size * 4 == bounds.length)
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+
+        bounds[size * 4] = p.getLeft();
+        bounds[size * 4 + 1] = p.getTop();
+        bounds[size * 4 + 2] = p.getRight();
+        bounds[size * 4 + 3] = p.getBottom();
+
+        for (int row = cell(p.getTop()); row <= cell(p.getBottom()); row++)
+        {
+            for (int column = cell(p.getLeft()); column <= cell(p.getRight()); column++)
+            {
+                int c = row * gridSize + column;
+                if (cells[c] == null)
+                    cells[c] = new int[4];
+                else if (cellCounts[c] == cells[c].length)
+                    cells[c] = Arrays.copyOf(cells[c], cellCounts[c] * 2);
+
+                cells[c][cellCounts[c]++] = size;
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Removes the most recently added path.
+     */
+    public void removeLast()
+    {
+        size--;
+        for (int row = cell(bounds[size * 4 + 1]); row <= cell(bounds[size * 4 + 3]); row++)
+        {
+            for (int column = cell(bounds[size * 4]); column <= cell(bounds[size * 4 + 2]); column++)
+            {
+                // Being the last path added, it's always at the end of the cell.
+                cellCounts[row * gridSize + column]--;
+            }
+        }
+    }
+
+    public void clear()
+    {
+        Arrays.fill(cellCounts, 0);
+        size = 0;
+    }
+
+    /**
+     * Finds the paths whose bounds intersect the rectangle. Returns how many were
+     * found; their indexes are in ascending (drawing) order at the start of
+     * getResults(), which is reused by the next query.
+     */
+    public int query(float left, float top, float right, float bottom)
+    {
+        if (marks.length < size)
+            marks = new int[Math.max(size, marks.length * 2)];
+        queryId++;
+
+        int found = 0;
+        for (int row = cell(top); row <= cell(bottom); row++)
+        {
+            for (int column = cell(left); column <= cell(right); column++)
+            {
+                int c = row * gridSize + column;
+                for (int k = 0; k < cellCounts[c]; k++)
+                {
+                    int i = cells[c][k];
+                    if (marks[i] == queryId)
+                        continue;
+                    marks[i] = queryId;
+
+                    if (bounds[i * 4] > right || bounds[i * 4 + 2] < left
+                            || bounds[i * 4 + 1] > bottom || bounds[i * 4 + 3] < top)
+                        continue;
+
+                    if (found == results.length)
+                        results = Arrays.copyOf(results, found * 2);
+                    results[found++] = i;
+                }
+            }
+        }
+
+        // Cells are each in order, but the combination of several isn't.
+        Arrays.sort(results, 0, found);
+        return found;
+    }
+
+    public int[] getResults()
+    {
+        return results;
+    }
+
+    // The grid row or column containing the coordinate, clamped to the grid.
+    private int cell(float f)
+    {
+        int c = (int) (f * gridSize);
+        if (c < 0) return 0;
+        if (c >= gridSize) return gridSize - 1;
+        return c;
+    }
+}
@@ -0,0 +1,209 @@
+package com.avery.fingerpaint;
+
+/**
+ * Reduces the number of points in a completed PaintPath using the
+ * Ramer-Douglas-Peucker algorithm. Slow strokes collect lots of nearly
+ * collinear points, which cost memory and time to save and redraw.
+ *
+ * Every removed point lies within the tolerance of the line between the points
+ * kept either side of it. That isn't quite what's drawn: each point is the
+ * control point of a quad ending halfway to the next, which cuts corners by a
+ * different amount once points are gone. So the error reported is measured
+ * between the curves drawn from the original and simplified points, and can
+ * be somewhat more than the tolerance. The width tapers between the widths of
+ * the kept points.
+ */
+public class PathSimplifier
+{
+    // When measuring the error, each quad of the original curve is checked at
+    // this many steps along it, against the simplified curve's quads flattened
+    // into as many lines.
+    private static final int ERROR_STEPS = 8;
+
+    public static class Result
+    {
+        public PaintPath path;
+        public int removedPoints;
+
+        // The largest distance, in pixels, from the curve drawn for the original
+        // path to the one drawn for the simplified path.
+        public float maxError;
+    }
+
+    /**
+     * Simplifies p. Paths are stored using abstract coordinates, so scaleX and
+     * scaleY convert them to pixels, which is what the tolerance is measured in.
+     */
+    public static Result simplify(PaintPath p, float tolerance, float scaleX, float scaleY)
+    {
+        Result result = new Result();
+        result.path = p;
+
+        int count = p.getPointCount();
+        if (count < 4)
+            return result;
+
+        // The curve drawn ends halfway between the last two points, so the one
+        // before the last is always kept too, or the end would move.
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 2] = true;
+        keep[count - 1] = true;
+
+        // Ranges still to be checked, as pairs of start and end indexes. Using an
+        // explicit stack avoids recursing once per point on very long paths.
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 2;
+
+        while (top > 0)
+        {
+            int end = stack[--top];
+            int start = stack[--top];
+
+            int farthest = -1;
+            float farthestDistance = 0;
+            for (int i = start + 1; i < end; i++)
+            {
+                float d = distanceToSegment(p, i, start, end, scaleX, scaleY);
+                if (d > farthestDistance)
+                {
+                    farthest = i;
+                    farthestDistance = d;
+                }
+            }
+
+            if (farthest == -1 || farthestDistance <= tolerance)
+                continue;
+
+            keep[farthest] = true;
+            if (top + 4 > stack.length)
+            {
+                int[] larger = new int[stack.length * 2];
+                System.arraycopy(stack, 0, larger, 0, top);
+                stack = larger;
+            }
+            stack[top++] = start;
+            stack[top++] = farthest;
+            stack[top++] = farthest;
+            stack[top++] = end;
+        }
+
+        int kept = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (keep[i])
+                kept++;
+        }
+
+        result.removedPoints = count - kept;
+        if (result.removedPoints == 0)
+            return result;
+
+        // keptBefore holds, for each original point, the index in the simplified
+        // path of the last point kept at or before it.
+        float[] points = new float[kept * 2];
+        float[] widths = p.getWidths() != null ? new float[kept] : null;
+        int[] keptBefore = new int[count];
+        int j = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (keep[i])
+            {
+                if (widths != null)
+                    widths[j] = p.getWidth(i);
+                points[j * 2] = p.getX(i);
+                points[j * 2 + 1] = p.getY(i);
+                j++;
+            }
+            keptBefore[i] = j - 1;
+        }
+
+        result.path = new PaintPath(p.getColor(), points, widths, kept);
+        result.maxError = measureError(p, result.path, keptBefore, scaleX, scaleY);
+        return result;
+    }
+
+    // The largest distance in pixels from the curve drawn for original to the
+    // one drawn for simplified. Each quad of the original is only compared with
+    // the simplified quads around the kept points either side of its control
+    // point, so the distance may be overestimated, but never underestimated.
+    private static float measureError(PaintPath original, PaintPath simplified, int[] keptBefore,
+                                      float scaleX, float scaleY)
+    {
+        float[] sample = new float[2];
+        float[] chord = new float[4];
+        float maxError = 0;
+
+        for (int i = 1; i < original.getPointCount(); i++)
+        {
+            // The simplified quads whose control points are the kept points
+            // around this one's.
+            int first = Math.max(1, keptBefore[i - 1]);
+            int last = Math.min(simplified.getPointCount() - 1, keptBefore[i - 1] + 2);
+
+            for (int s = 0; s <= ERROR_STEPS; s++)
+            {
+                quadPoint(original, i, (float) s / ERROR_STEPS, scaleX, scaleY, sample);
+
+                float nearest = Float.MAX_VALUE;
+                for (int q = first; q <= last; q++)
+                {
+                    quadPoint(simplified, q, 0, scaleX, scaleY, chord);
+                    for (int c = 1; c <= ERROR_STEPS; c++)
+                    {
+                        chord[2] = chord[0];
+                        chord[3] = chord[1];
+                        quadPoint(simplified, q, (float) c / ERROR_STEPS, scaleX, scaleY, chord);
+                        nearest = Math.min(nearest, distanceToLine(sample[0], sample[1],
+                                chord[2], chord[3], chord[0], chord[1]));
+                    }
+                }
+                maxError = Math.max(maxError, nearest);
+            }
+        }
+        return maxError;
+    }
+
+    // Sets out[0] and out[1] to the point, in pixels, at t along the quad drawn
+    // for point i of p (1 or more): controlled by the point before it, from
+    // halfway between the two points before that (or the first point), to
+    // halfway between the point before it and it.
+    private static void quadPoint(PaintPath p, int i, float t, float scaleX, float scaleY, float[] out)
+    {
+        float cx = p.getX(i - 1);
+        float cy = p.getY(i - 1);
+        float x0 = i == 1 ? cx : (p.getX(i - 2) + cx) / 2;
+        float y0 = i == 1 ? cy : (p.getY(i - 2) + cy) / 2;
+        float x1 = (cx + p.getX(i)) / 2;
+        float y1 = (cy + p.getY(i)) / 2;
+
+        float u = 1 - t;
+        out[0] = (u * u * x0 + 2 * u * t * cx + t * t * x1) * scaleX;
+        out[1] = (u * u * y0 + 2 * u * t * cy + t * t * y1) * scaleY;
+    }
+
+    // Distance in pixels from point i to the line segment between points a and b.
+    private static float distanceToSegment(PaintPath p, int i, int a, int b, float scaleX, float scaleY)
+    {
+        return distanceToLine(p.getX(i) * scaleX, p.getY(i) * scaleY,
+                p.getX(a) * scaleX, p.getY(a) * scaleY, p.getX(b) * scaleX, p.getY(b) * scaleY);
+    }
+
+    // Distance from (x, y) to the line segment from (ax, ay) to (bx, by).
+    private static float distanceToLine(float x, float y, float ax, float ay, float bx, float by)
+    {
+        float dx = bx - ax;
+        float dy = by - ay;
+
+        float lengthSquared = dx * dx + dy * dy;
+        float t = 0;
+        if (lengthSquared > 0)
+            t = Math.max(0, Math.min(1, ((x - ax) * dx + (y - ay) * dy) / lengthSquared));
+
+        float ex = x - (ax + t * dx);
+        float ey = y - (ay + t * dy);
+        return (float) Math.sqrt(ex * ex + ey * ey);
+    }
+}
@@ -0,0 +1,179 @@
+package com.avery.fingerpaint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an opaque 8-bit RGB PNG a few rows at a time, so that an image much
+ * larger than memory allows can be encoded as it's drawn. Compressed data is
+ * written out in IDAT chunks as it fills a fixed-size buffer, so memory use
+ * doesn't depend on the image size.
+ *
+ * Each row is filtered with the Sub filter (the difference from the pixel to
+ * the left), which suits the large areas of flat color in a painting.
+ */
+public class PngEncoder
+{
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private OutputStream out;
+    private int width;
+    private int height;
+    private int rowsWritten;
+
+    private Deflater deflater;
+    private DeflaterOutputStream compressed;
+    private byte[] row; // reusable filtered row
+    private CRC32 crc;
+
+    /**
+     * Writes the PNG header to out, ready for the rows.
+     */
+    public PngEncoder(OutputStream out, int width, int height) throws IOException
+    {
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        crc = new CRC32();
+        row = new byte[1 + width * 3];
+
+        out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8; // bit depth
+        header[9] = 2; // color type: RGB
+        writeChunk("IHDR", header, header.length);
+
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        compressed = new DeflaterOutputStream(new ChunkOutputStream(), deflater, CHUNK_SIZE);
+    }
+
+    /**
+     * Writes rowCount rows of ARGB pixels, starting at pixels[offset]. Alpha is
+     * ignored.
+     */
+    public void writeRows(int[] pixels, int offset, int rowCount) throws IOException
+    {
+        if (rowsWritten + rowCount > height)
+            throw new IllegalArgumentException("Image is only " + height + " rows");
+
+        row[0] = 1; // filter type: Sub
+        for (int y = 0; y < rowCount; y++)
+        {
+            int start = offset + y * width;
+            int previous = 0;
+            int i = 1;
+            for (int x = 0; x < width; x++)
+            {
+                int pixel = pixels[start + x];
+                row[i++] = (byte) ((pixel >> 16) - (previous >> 16));
+                row[i++] = (byte) ((pixel >> 8) - (previous >> 8));
+                row[i++] = (byte) (pixel - previous);
+                previous = pixel;
+            }
+            compressed.write(row, 0, row.length);
+        }
+        rowsWritten += rowCount;
+    }
+
+    /**
+     * Writes the end of the image once every row has been written. Doesn't
+     * close the output stream.
+     */
+    public void finish() throws IOException
+    {
+        if (rowsWritten != height)
+            throw new IllegalStateException("Only " + rowsWritten + " of " + height + " rows written");
+
+        compressed.finish();
+        compressed.flush();
+        deflater.end();
+        writeChunk("IEND", null, 0);
+        out.flush();
+    }
+
+    /**
+     * Frees the compressor without finishing the image, if it's abandoned part way.
+     */
+    public void abort()
+    {
+        deflater.end();
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException
+    {
+        byte[] header = new byte[8];
+        putInt(header, 0, length);
+        for (int i = 0; i < 4; i++)
+        {
+            header[4 + i] = (byte) type.charAt(i);
+        }
+
+        crc.reset();
+        crc.update(header, 4, 4);
+        if (length > 0)
+            crc.update(data, 0, length);
+
+        byte[] footer = new byte[4];
+        putInt(footer, 0, (int) crc.getValue());
+
+        out.write(header);
+        if (length > 0)
+            out.write(data, 0, length);
+        out.write(footer);
+    }
+
+    private static void putInt(byte[] b, int offset, int value)
+    {
+        b[offset] = (byte) (value >>> 24);
+        b[offset + 1] = (byte) (value >>> 16);
+        b[offset + 2] = (byte) (value >>> 8);
+        b[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Collects compressed data and writes it out as IDAT chunks.
+     */
+    private class ChunkOutputStream extends OutputStream
+    {
+        private byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            if (count == buffer.length)
+                flush();
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int length) throws IOException
+        {
+            while (length > 0)
+            {
+                if (count == buffer.length)
+                    flush();
+
+                int n = Math.min(length, buffer.length - count);
+                System.arraycopy(b, offset, buffer, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            if (count > 0)
+                writeChunk("IDAT", buffer, count);
+            count = 0;
+        }
+    }
+}
@@ -12,7 +12,7 @@ import android.view.View;
 /**
  * The view for holding one of the primary colors.
  */
-public class PrimaryPaintView extends View
+public class PrimaryPaintView extends View implements SwatchCache.Swatch
 {
     public interface OnColorChangeListener
     {
@@ -27,10 +27,15 @@ public class PrimaryPaintView extends View
     private Paint pIndicatorBg;
     private Paint pIndicator;
     private Paint pFill;
+    private RectF indicatorRect;
+    private SwatchCache swatchCache;
+    private SwatchCache.Look look;
 
     private float lastY;
     private float colorPercent;
 
+    private static final float INDICATOR_WIDTH = 6;
+
     public PrimaryPaintView(Context context, int color)
     {
         super(context);
@@ -50,13 +55,20 @@ public class PrimaryPaintView extends View
         pIndicatorBg.setAntiAlias(true);
         pIndicatorBg.setColor(Color.WHITE);
 
+        // The indicator is the ring between the fill and the outline, drawn
+        // as a stroked arc so that it can go over the fill.
         pIndicator = new Paint();
         pIndicator.setAntiAlias(true);
         pIndicator.setColor(Color.GREEN);
+        pIndicator.setStyle(Paint.Style.STROKE);
+        pIndicator.setStrokeWidth(INDICATOR_WIDTH);
 
         pFill = new Paint();
         pFill.setColor(color);
         pFill.setAntiAlias(true);
+
+        indicatorRect = new RectF();
+        look = new SwatchCache.Look();
     }
 
     public void setColorPercent(float percent)
@@ -65,6 +77,11 @@ public class PrimaryPaintView extends View
         invalidate();
     }
 
+    public void setSwatchCache(SwatchCache cache)
+    {
+        this.swatchCache = cache;
+    }
+
     public void setOnColorChangeListener(OnColorChangeListener l)
     {
         this.listener = l;
@@ -131,24 +148,38 @@ public class PrimaryPaintView extends View
     @Override
     protected void onDraw(Canvas canvas)
     {
+        // Only the circles are cached; the indicator changes as it's dragged.
+        if (swatchCache != null)
+            swatchCache.draw(canvas, this, look, getWidth(), getHeight(), color, 0);
+        else
+            drawSwatch(canvas);
+
         float padding = getWidth() / 10f;
         float radius = (getWidth() / 2f) - padding;
 
         float centerX = radius + padding;
         float centerY = radius + padding;
+        float indicatorRadius = radius + INDICATOR_WIDTH / 2;
 
-        float indicatorAngle = 360 * colorPercent;
-        float indicatorRadius = radius + 6;
-
-        RectF r = new RectF();
+        RectF r = indicatorRect;
         r.left = centerX - indicatorRadius;
         r.right = centerX + indicatorRadius;
         r.top = centerY - indicatorRadius;
         r.bottom = centerY + indicatorRadius;
+        canvas.drawArc(r, 90f, 360 * colorPercent, false, pIndicator);
+    }
+
+    @Override
+    public void drawSwatch(Canvas canvas)
+    {
+        float padding = getWidth() / 10f;
+        float radius = (getWidth() / 2f) - padding;
+
+        float centerX = radius + padding;
+        float centerY = radius + padding;
 
         canvas.drawCircle(centerX, centerY, radius+8, pOutline);
-        canvas.drawArc(r, 0, 360, true, pIndicatorBg);
-        canvas.drawArc(r, 90f, indicatorAngle, true, pIndicator);
+        canvas.drawCircle(centerX, centerY, radius + INDICATOR_WIDTH, pIndicatorBg);
         canvas.drawCircle(centerX, centerY, radius, pFill);
     }
 }
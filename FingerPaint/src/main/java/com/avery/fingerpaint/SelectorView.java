@@ -4,7 +4,6 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.RectF;
 import android.os.Bundle;
 import android.os.Parcelable;
 import android.util.Log;
@@ -14,13 +13,15 @@ import android.view.View;
 /**
  * The view that shows the current color and is used to open and close the palette.
  */
-public class SelectorView extends View
+public class SelectorView extends View implements SwatchCache.Swatch
 {
     private int color;
 
     private Paint pOutline2;
     private Paint pOutline1;
     private Paint pFill;
+    private SwatchCache swatchCache;
+    private SwatchCache.Look look;
 
     public SelectorView(Context context)
     {
@@ -41,6 +42,8 @@ public class SelectorView extends View
         pFill = new Paint();
         //pFill.setColor(color);
         pFill.setAntiAlias(true);
+
+        look = new SwatchCache.Look();
     }
 
     public void setColor(int c)
@@ -50,6 +53,10 @@ public class SelectorView extends View
         invalidate();
     }
 
+    public void setSwatchCache(SwatchCache cache)
+    {
+        this.swatchCache = cache;
+    }
 
     @Override
     public boolean onTouchEvent(MotionEvent event)
@@ -65,6 +72,15 @@ public class SelectorView extends View
 
     @Override
     protected void onDraw(Canvas canvas)
+    {
+        if (swatchCache != null)
+            swatchCache.draw(canvas, this, look, getWidth(), getHeight(), color, 0);
+        else
+            drawSwatch(canvas);
+    }
+
+    @Override
+    public void drawSwatch(Canvas canvas)
     {
         float padding = getWidth() / 10f;
         float radius = (getWidth() / 2f) - padding;
@@ -72,12 +88,6 @@ public class SelectorView extends View
         float centerX = radius + padding;
         float centerY = radius + padding;
 
-        RectF r = new RectF();
-        r.left = centerX - radius;
-        r.right = centerX + radius;
-        r.top = centerY - radius;
-        r.bottom = centerY + radius;
-
         canvas.drawCircle(centerX, centerY, radius+8, pOutline2);
         canvas.drawCircle(centerX, centerY, radius+6, pOutline1);
         canvas.drawCircle(centerX, centerY, radius, pFill);
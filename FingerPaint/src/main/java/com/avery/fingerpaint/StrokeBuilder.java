@@ -0,0 +1,95 @@
+package com.avery.fingerpaint;
+
+/**
+ * Builds the path drawn by one finger from its touch samples, whichever thread
+ * they're handled on. Samples are given in pixels, along with the size of the
+ * view, since paths are stored using abstract coordinates (x=0..1, y=0..1).
+ *
+ * lastX and lastY are used so that we only act on new touch samples if they
+ * differ from the previous one by some threshold value. lastTime is when that
+ * sample was taken, and width the width given to it.
+ */
+public class StrokeBuilder
+{
+    private static final float THRESHOLD = 3;
+
+    // Strokes widen the harder the finger presses, compared to when it touched
+    // down, and narrow as it moves faster: at VELOCITY_THINNING pixels per ms
+    // they're half as wide. Each point moves WIDTH_SMOOTHING of the way from the
+    // last point's width to that, so the width doesn't jump with noisy samples.
+    private static final float VELOCITY_THINNING = 4;
+    private static final float WIDTH_SMOOTHING = 0.3f;
+
+    int pointerId;
+    PaintPath path;
+    float lastX;
+    float lastY;
+    long lastTime;
+    float downPressure;
+    float width;
+
+    public StrokeBuilder(int pointerId, int color, float x, float y, float pressure, long time, int viewWidth, int viewHeight)
+    {
+        this.pointerId = pointerId;
+        lastX = x / viewWidth;
+        lastY = y / viewHeight;
+        lastTime = time;
+        downPressure = pressure;
+        width = 1;
+        path = new PaintPath(color, lastX, lastY, width);
+    }
+
+    public int getPointerId()
+    {
+        return pointerId;
+    }
+
+    public PaintPath getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Adds a sample at (x, y), in pixels, to the path if it's far enough from
+     * the last point. Returns whether it was.
+     */
+    public boolean addSample(float x, float y, float pressure, long time, int viewWidth, int viewHeight)
+    {
+        float px = x / viewWidth;
+        float py = y / viewHeight;
+        float dx = Math.abs(px - lastX);
+        float dy = Math.abs(py - lastY);
+
+        if (dx > (THRESHOLD / viewWidth) || dy > (THRESHOLD / viewHeight))
+        {
+            float distance = (float) Math.hypot(dx * viewWidth, dy * viewHeight);
+            path.addPoint(px, py, nextWidth(pressure, distance, time - lastTime));
+            lastX = px;
+            lastY = py;
+            lastTime = time;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The width of the next point, which has moved distance pixels in elapsed
+     * ms since the last point.
+     */
+    private float nextWidth(float pressure, float distance, long elapsed)
+    {
+        // Devices report pressure on different scales (some always report 1),
+        // so it only counts relative to the pressure the stroke started with.
+        float target = 1;
+        if (downPressure > 0 && pressure > 0)
+            target *= pressure / downPressure;
+
+        // Samples can share a timestamp, which gives no speed to go on.
+        if (elapsed > 0)
+            target /= 1 + distance / elapsed / VELOCITY_THINNING;
+
+        target = Math.max(PaintPath.MIN_WIDTH, Math.min(PaintPath.MAX_WIDTH, target));
+        width += (target - width) * WIDTH_SMOOTHING;
+        return width;
+    }
+}
@@ -0,0 +1,149 @@
+package com.avery.fingerpaint;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary format for a list of PaintPaths, used instead of Java
+ * serialization when saving state. The encoding of a single path is also used
+ * by StrokeJournal.
+ *
+ * Layout (little-endian):
+ *   int version
+ *   int pathCount
+ *   for each path:
+ *     int color
+ *     int pointCount, with the top bit (HAS_WIDTHS) set if widths follow
+ *     float[pointCount * 2] packed points
+ *     float[pointCount] widths, if HAS_WIDTHS is set
+ *
+ * Version 1 is the same without widths, so the top bit is never set and it's
+ * read the same way.
+ */
+public class StrokeCodec
+{
+    public static final int VERSION = 2;
+
+    private static final int HAS_WIDTHS = 0x80000000;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int PATH_HEADER_SIZE = 8;
+
+    public static byte[] encode(List<PaintPath> paths)
+    {
+        int size = HEADER_SIZE;
+        for (int i = 0; i < paths.size(); i++)
+        {
+            size += getEncodedSize(paths.get(i));
+        }
+
+        byte[] data = new byte[size];
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(VERSION);
+        buffer.putInt(paths.size());
+
+        for (int i = 0; i < paths.size(); i++)
+        {
+            encodePath(paths.get(i), buffer);
+        }
+
+        return data;
+    }
+
+    /**
+     * Number of bytes encodePath() writes for p.
+     */
+    public static int getEncodedSize(PaintPath p)
+    {
+        int size = PATH_HEADER_SIZE + p.getPointCount() * 8;
+        if (p.getWidths() != null)
+            size += p.getPointCount() * 4;
+        return size;
+    }
+
+    /**
+     * Writes a single path at the buffer's position, which must be little-endian.
+     */
+    public static void encodePath(PaintPath p, ByteBuffer buffer)
+    {
+        int count = p.getPointCount();
+        float[] widths = p.getWidths();
+        buffer.putInt(p.getColor());
+        buffer.putInt(widths != null ? count | HAS_WIDTHS : count);
+
+        // Bulk copy the coordinates through a float view of the buffer.
+        buffer.asFloatBuffer().put(p.getPoints(), 0, count * 2);
+        buffer.position(buffer.position() + count * 8);
+
+        if (widths != null)
+        {
+            buffer.asFloatBuffer().put(widths, 0, count);
+            buffer.position(buffer.position() + count * 4);
+        }
+    }
+
+    /**
+     * Reads a single path written by encodePath().
+     */
+    public static PaintPath decodePath(ByteBuffer buffer) throws IOException
+    {
+        try
+        {
+            int color = buffer.getInt();
+            int count = buffer.getInt();
+            boolean hasWidths = (count & HAS_WIDTHS) != 0;
+            count &= ~HAS_WIDTHS;
+            if (count < 1 || count > buffer.remaining() / (hasWidths ? 12 : 8))
+                throw new IOException("Corrupt stroke data: " + count + " points");
+
+            float[] points = new float[count * 2];
+            buffer.asFloatBuffer().get(points);
+            buffer.position(buffer.position() + count * 8);
+
+            float[] widths = null;
+            if (hasWidths)
+            {
+                widths = new float[count];
+                buffer.asFloatBuffer().get(widths);
+                buffer.position(buffer.position() + count * 4);
+            }
+
+            return new PaintPath(color, points, widths, count);
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IOException("Truncated stroke data");
+        }
+    }
+
+    public static ArrayList<PaintPath> decode(byte[] data) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+
+        try
+        {
+            int version = buffer.getInt();
+            if (version < 1 || version > VERSION)
+                throw new IOException("Unsupported stroke format version " + version);
+
+            int pathCount = buffer.getInt();
+            if (pathCount < 0 || pathCount > buffer.remaining() / PATH_HEADER_SIZE)
+                throw new IOException("Corrupt stroke data: " + pathCount + " paths");
+
+            ArrayList<PaintPath> paths = new ArrayList<PaintPath>(pathCount);
+            for (int i = 0; i < pathCount; i++)
+            {
+                paths.add(decodePath(buffer));
+            }
+            return paths;
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IOException("Truncated stroke data");
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.avery.fingerpaint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds one stroke for each finger from the samples in a TouchSampleQueue,
+ * on whichever thread takes them. A DOWN starts a stroke for its pointer,
+ * finishing any it still had, MOVEs add to the stroke with the same pointer,
+ * an UP finishes it, and a CANCEL finishes every stroke, oldest first.
+ *
+ * Finished strokes are handed to onStrokeFinished() in the order they finish,
+ * which is the order their fingers lifted. Subclasses create the strokes, so
+ * that they can keep their own state in them.
+ */
+public abstract class StrokeDispatcher<S extends StrokeBuilder>
+{
+    private ArrayList<S> strokes; // still being drawn, oldest first
+    private int width;
+    private int height;
+
+    public StrokeDispatcher()
+    {
+        strokes = new ArrayList<S>();
+    }
+
+    /**
+     * Sets the size of the view the samples are in, in pixels.
+     */
+    public void setSize(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Takes every sample in the queue. Returns the time of the first, or 0 if
+     * there weren't any. Only the queue's consumer may call this.
+     */
+    public long takeSamples(TouchSampleQueue queue)
+    {
+        long firstTime = 0;
+        while (queue.poll())
+        {
+            if (firstTime == 0)
+                firstTime = queue.getTime();
+
+            S stroke;
+            switch (queue.getAction())
+            {
+                case TouchSampleQueue.DOWN:
+                    stroke = findStroke(queue.getPointerId());
+                    if (stroke != null)
+                        finish(stroke);
+
+                    stroke = createStroke(queue.getPointerId(), queue.getColor(), queue.getX(), queue.getY(),
+                            queue.getPressure(), queue.getTime(), width, height);
+                    strokes.add(stroke);
+                    break;
+                case TouchSampleQueue.MOVE:
+                    stroke = findStroke(queue.getPointerId());
+                    if (stroke != null)
+                        stroke.addSample(queue.getX(), queue.getY(), queue.getPressure(), queue.getTime(),
+                                width, height);
+                    break;
+                case TouchSampleQueue.UP:
+                    stroke = findStroke(queue.getPointerId());
+                    if (stroke != null)
+                        finish(stroke);
+                    break;
+                case TouchSampleQueue.CANCEL:
+                    finishAll();
+                    break;
+            }
+        }
+        return firstTime;
+    }
+
+    /**
+     * The strokes still being drawn, oldest first. It mustn't be changed.
+     */
+    public List<S> getStrokes()
+    {
+        return strokes;
+    }
+
+    /**
+     * Finishes every stroke still being drawn, oldest first.
+     */
+    public void finishAll()
+    {
+        while (!strokes.isEmpty())
+        {
+            finish(strokes.get(0));
+        }
+    }
+
+    /**
+     * Creates the stroke for a pointer that has just touched down at (x, y),
+     * in pixels, in a view width by height pixels.
+     */
+    protected abstract S createStroke(int pointerId, int color, float x, float y, float pressure, long time,
+            int width, int height);
+
+    /**
+     * Called when a stroke finishes, once it's no longer in getStrokes().
+     */
+    protected abstract void onStrokeFinished(S stroke);
+
+    private S findStroke(int pointerId)
+    {
+        for (int i = 0; i < strokes.size(); i++)
+        {
+            if (strokes.get(i).pointerId == pointerId)
+                return strokes.get(i);
+        }
+        return null;
+    }
+
+    private void finish(S stroke)
+    {
+        strokes.remove(stroke);
+        onStrokeFinished(stroke);
+    }
+}
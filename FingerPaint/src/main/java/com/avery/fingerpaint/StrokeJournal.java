@@ -0,0 +1,202 @@
+package com.avery.fingerpaint;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * An append-only file recording every completed path, so that the painting
+ * can be rebuilt if the process is killed before its state is saved. The file
+ * itself is a StrokeJournalFile.
+ *
+ * All file access happens on the journal's own thread; the other methods
+ * just queue an operation and return. Operations queued while a write is in
+ * progress are written together and share a single fsync.
+ */
+public class StrokeJournal implements Runnable
+{
+    /**
+     * Interface definition for a callback to be invoked on the UI thread once the
+     * journal has been read.
+     */
+    public interface OnLoadListener
+    {
+        public void onJournalLoaded(ArrayList<PaintPath> paths);
+    }
+
+    private static final String TAG = "StrokeJournal";
+
+    private static final int OP_APPEND = 1;
+    private static final int OP_UNDO = 2;
+    private static final int OP_CLEAR = 3;
+    private static final int OP_LOAD = 4;
+    private static final int OP_CLOSE = 5;
+
+    private File file;
+    private LinkedBlockingQueue<Op> queue;
+    private Handler handler;
+
+    // Only used on the journal thread.
+    private StrokeJournalFile journalFile;
+
+    public StrokeJournal(File file)
+    {
+        this.file = file;
+        queue = new LinkedBlockingQueue<Op>();
+        handler = new Handler(Looper.getMainLooper());
+
+        Thread thread = new Thread(this, "StrokeJournal");
+        thread.start();
+    }
+
+    /**
+     * Reads the journal and passes the paths it holds to the listener, on the UI
+     * thread. Paths appended before then are written after the ones read.
+     */
+    public void load(OnLoadListener listener)
+    {
+        Op op = new Op(OP_LOAD);
+        op.listener = listener;
+        queue.add(op);
+    }
+
+    public void append(PaintPath p)
+    {
+        Op op = new Op(OP_APPEND);
+        op.path = p;
+        queue.add(op);
+    }
+
+    public void undo()
+    {
+        queue.add(new Op(OP_UNDO));
+    }
+
+    public void clear()
+    {
+        queue.add(new Op(OP_CLEAR));
+    }
+
+    /**
+     * Writes anything still queued, then closes the file and stops the thread.
+     */
+    public void close()
+    {
+        queue.add(new Op(OP_CLOSE));
+    }
+
+    @Override
+    public void run()
+    {
+        android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+
+        try
+        {
+            journalFile = new StrokeJournalFile(file);
+        }
+        catch (IOException e)
+        {
+            Log.e(TAG, "Unable to open " + file, e);
+            return;
+        }
+
+        ArrayList<Op> batch = new ArrayList<Op>();
+        boolean closed = false;
+        while (!closed)
+        {
+            try
+            {
+                batch.add(queue.take());
+            }
+            catch (InterruptedException e)
+            {
+                continue;
+            }
+            queue.drainTo(batch);
+
+            long start = System.nanoTime();
+            int written = 0;
+            try
+            {
+                for (Op op : batch)
+                {
+                    switch (op.type)
+                    {
+                        case OP_APPEND:
+                            written += journalFile.appendPath(op.path);
+                            break;
+                        case OP_UNDO:
+                            written += journalFile.appendUndo();
+                            break;
+                        case OP_CLEAR:
+                            journalFile.clear();
+                            break;
+                        case OP_LOAD:
+                            readJournal(op.listener);
+                            break;
+                        case OP_CLOSE:
+                            closed = true;
+                            break;
+                    }
+                }
+
+                if (written > 0)
+                {
+                    // One fsync covers everything written in this batch.
+                    journalFile.commit();
+                    Log.d(TAG, "Wrote " + batch.size() + " operations, " + written + " bytes in "
+                            + (System.nanoTime() - start) / 1000 + " us");
+                }
+            }
+            catch (IOException e)
+            {
+                Log.e(TAG, "Unable to write " + file, e);
+            }
+            batch.clear();
+        }
+
+        try
+        {
+            journalFile.close();
+        }
+        catch (IOException e)
+        {
+            Log.e(TAG, "Unable to close " + file, e);
+        }
+    }
+
+    private void readJournal(final OnLoadListener listener) throws IOException
+    {
+        long start = System.nanoTime();
+        final ArrayList<PaintPath> paths = journalFile.read();
+
+        if (journalFile.getDiscardedBytes() > 0)
+            Log.w(TAG, "Discarded " + journalFile.getDiscardedBytes() + " bytes of unreadable records");
+        Log.d(TAG, "Recovered " + paths.size() + " paths, " + journalFile.size() + " bytes in "
+                + (System.nanoTime() - start) / 1000 + " us");
+
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onJournalLoaded(paths);
+            }
+        });
+    }
+
+    private static class Op
+    {
+        final int type;
+        PaintPath path;
+        OnLoadListener listener;
+
+        Op(int type)
+        {
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.avery.fingerpaint;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * The file behind a StrokeJournal: an append-only record of every completed
+ * path. It doesn't use Android, and isn't thread safe; StrokeJournal only uses
+ * it from its own thread.
+ *
+ * Appended records are buffered until commit(), which writes them all with a
+ * single fsync.
+ *
+ * Layout (little-endian):
+ *   int magic, int version
+ *   records: byte type, int length, payload[length], int crc32 of type and payload
+ * A PATH record's payload is a path encoded by StrokeCodec.encodePath(). An UNDO
+ * record has no payload and removes the most recent path. Clearing truncates the
+ * file back to its header.
+ */
+public class StrokeJournalFile
+{
+    private static final int MAGIC = 0x314a5046; // "FPJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_OVERHEAD = 9; // type, length and crc
+
+    private static final byte TYPE_PATH = 1;
+    private static final byte TYPE_UNDO = 2;
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private CRC32 crc;
+
+    // How many bytes the last read() found unreadable and dropped.
+    private long discardedBytes;
+
+    /**
+     * Opens the journal in file, creating it if it doesn't exist.
+     */
+    public StrokeJournalFile(File file) throws IOException
+    {
+        buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        crc = new CRC32();
+
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        if (channel.size() < HEADER_SIZE)
+            truncate();
+        channel.position(channel.size());
+    }
+
+    /**
+     * Adds a PATH record, returning its size in bytes.
+     */
+    public int appendPath(PaintPath p) throws IOException
+    {
+        int size = StrokeCodec.getEncodedSize(p);
+        ByteBuffer payload = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        StrokeCodec.encodePath(p, payload);
+        return writeRecord(TYPE_PATH, payload.array());
+    }
+
+    /**
+     * Adds an UNDO record, returning its size in bytes.
+     */
+    public int appendUndo() throws IOException
+    {
+        return writeRecord(TYPE_UNDO, null);
+    }
+
+    /**
+     * Writes the records appended since the last commit, and waits for them to
+     * reach the disk.
+     */
+    public void commit() throws IOException
+    {
+        flush();
+        channel.force(false);
+    }
+
+    /**
+     * Removes every record, including any not yet committed.
+     */
+    public void clear() throws IOException
+    {
+        buffer.clear();
+        truncate();
+    }
+
+    /**
+     * Reads the paths that haven't been undone, after writing any records not yet
+     * committed. Records cut off or corrupted by a crash end the journal and are
+     * dropped; getDiscardedBytes() says how many bytes that was. A journal that's
+     * unreadable, or mostly undone paths, is rewritten with just the paths read.
+     */
+    public ArrayList<PaintPath> read() throws IOException
+    {
+        flush();
+
+        ArrayList<PaintPath> paths = new ArrayList<PaintPath>();
+        int records = 0;
+
+        long size = channel.size();
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        map.order(ByteOrder.LITTLE_ENDIAN);
+
+        long validSize = HEADER_SIZE;
+        if (map.getInt() != MAGIC || map.getInt() != VERSION)
+        {
+            validSize = 0;
+        }
+        else
+        {
+            while (map.remaining() >= RECORD_OVERHEAD)
+            {
+                byte type = map.get();
+                int length = map.getInt();
+                if (length < 0 || length > map.remaining() - 4)
+                    break;
+
+                byte[] payload = new byte[length];
+                map.get(payload);
+                crc.reset();
+                crc.update(type);
+                crc.update(payload);
+                if (map.getInt() != (int) crc.getValue())
+                    break;
+
+                if (type == TYPE_PATH)
+                {
+                    paths.add(StrokeCodec.decodePath(ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN)));
+                }
+                else if (type == TYPE_UNDO && !paths.isEmpty())
+                {
+                    paths.remove(paths.size() - 1);
+                }
+                records++;
+                validSize = map.position();
+            }
+        }
+        discardedBytes = size - validSize;
+
+        if (validSize == 0 || records > paths.size() * 2 + 16)
+        {
+            // Unreadable, or mostly undone paths: start again with just the live ones.
+            truncate();
+            for (PaintPath p : paths)
+            {
+                appendPath(p);
+            }
+            commit();
+        }
+        else
+        {
+            // Anything after the last complete record was cut off by a crash.
+            channel.truncate(validSize);
+            channel.position(validSize);
+        }
+        return paths;
+    }
+
+    public long getDiscardedBytes()
+    {
+        return discardedBytes;
+    }
+
+    /**
+     * The size of the file, not counting records that haven't been committed.
+     */
+    public long size() throws IOException
+    {
+        return channel.size();
+    }
+
+    /**
+     * Commits anything appended, then closes the file.
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            commit();
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    private int writeRecord(byte type, byte[] payload) throws IOException
+    {
+        int length = payload == null ? 0 : payload.length;
+
+        crc.reset();
+        crc.update(type);
+        if (payload != null)
+            crc.update(payload);
+
+        if (buffer.remaining() < RECORD_OVERHEAD + length)
+            flush();
+
+        if (buffer.remaining() < RECORD_OVERHEAD + length)
+        {
+            // Too big for the buffer, so write it directly.
+            ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + length).order(ByteOrder.LITTLE_ENDIAN);
+            putRecord(record, type, payload);
+            record.flip();
+            while (record.hasRemaining())
+                channel.write(record);
+        }
+        else
+        {
+            putRecord(buffer, type, payload);
+        }
+        return RECORD_OVERHEAD + length;
+    }
+
+    private void putRecord(ByteBuffer b, byte type, byte[] payload)
+    {
+        b.put(type);
+        b.putInt(payload == null ? 0 : payload.length);
+        if (payload != null)
+            b.put(payload);
+        b.putInt((int) crc.getValue());
+    }
+
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    private void truncate() throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.flip();
+
+        channel.truncate(0);
+        channel.position(0);
+        while (header.hasRemaining())
+            channel.write(header);
+        channel.force(false);
+    }
+}
@@ -0,0 +1,364 @@
+package com.avery.fingerpaint;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Draws PaintPaths into an array of ARGB pixels without using Android, so
+ * paintings can be rendered off the device or at sizes a Bitmap can't hold.
+ *
+ * Paths are drawn the same way as PaintPathRenderer draws them: each point is
+ * the control point of a quad ending halfway to the next, stroked with round
+ * caps and joins at the given radius times the width of the points, tapering
+ * between them, and a single point is a filled circle. Like PaintPathRenderer,
+ * paths are drawn opaque whatever the alpha of their color. Edges are
+ * anti-aliased by how far each pixel's center lies from the stroke.
+ *
+ * The image is split into bands of rows that are drawn in parallel, one thread
+ * per core. Every band draws the paths in order, so overlapping paths are
+ * blended the same as they are on screen.
+ */
+public class StrokeRasterizer
+{
+    public static final int BAND_HEIGHT = 64;
+
+    // Quads are flattened into lines that stay within this many pixels of the curve.
+    private static final float FLATNESS = 0.1f;
+
+    private int width;
+    private int height;
+    private float radius;
+    private int backgroundColor;
+    private int threadCount;
+
+    /**
+     * Creates a rasterizer for images width by height pixels, drawing paths
+     * radius pixels wide either side where their width is 1.
+     */
+    public StrokeRasterizer(int width, int height, float radius)
+    {
+        this.width = width;
+        this.height = height;
+        this.radius = radius;
+        this.backgroundColor = 0xffffffff;
+        this.threadCount = Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Sets the color pixels are filled with before drawing. White by default.
+     */
+    public void setBackgroundColor(int color)
+    {
+        this.backgroundColor = color;
+    }
+
+    /**
+     * Sets how many threads render() uses. Defaults to the number of cores.
+     */
+    public void setThreadCount(int threads)
+    {
+        this.threadCount = Math.max(1, threads);
+    }
+
+    public int getThreadCount()
+    {
+        return threadCount;
+    }
+
+    /**
+     * Draws the paths into pixels, which holds width * height pixels a row at a
+     * time. The paths mustn't change until it returns.
+     */
+    public void render(List<PaintPath> paths, int[] pixels)
+    {
+        render(paths, 0, height, pixels);
+    }
+
+    /**
+     * Draws rows top (inclusive) to bottom (exclusive) of the image into pixels,
+     * starting at its first element, so that a large image can be drawn a
+     * piece at a time.
+     */
+    public void render(List<PaintPath> paths, int top, int bottom, int[] pixels)
+    {
+        renderBands(paths, top, bottom, pixels, true);
+    }
+
+    /**
+     * Draws the paths over the image already in pixels, rather than over the
+     * background, e.g. to add paths to a copy of an earlier image.
+     */
+    public void drawOver(List<PaintPath> paths, int[] pixels)
+    {
+        renderBands(paths, 0, height, pixels, false);
+    }
+
+    private void renderBands(final List<PaintPath> paths, final int top, final int bottom, final int[] pixels,
+                             final boolean clear)
+    {
+        final int bandCount = (bottom - top + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        final AtomicInteger nextBand = new AtomicInteger();
+
+        // Each thread takes the next band until there are none left, so threads
+        // with less to draw pick up more bands.
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                Band band = new Band();
+                int b;
+                while ((b = nextBand.getAndIncrement()) < bandCount)
+                {
+                    int bandTop = top + b * BAND_HEIGHT;
+                    int bandBottom = Math.min(bottom, bandTop + BAND_HEIGHT);
+                    renderBand(band, paths, bandTop, bandBottom, pixels, (bandTop - top) * width, clear);
+                }
+            }
+        };
+
+        int threads = Math.min(threadCount, bandCount);
+        Thread[] helpers = new Thread[Math.max(0, threads - 1)];
+        for (int i = 0; i < helpers.length; i++)
+        {
+            helpers[i] = new Thread(worker, "StrokeRasterizer " + i);
+            helpers[i].start();
+        }
+        worker.run();
+
+        boolean interrupted = false;
+        for (Thread t : helpers)
+        {
+            while (true)
+            {
+                try
+                {
+                    t.join();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    // The helpers are still writing to pixels, so they have to be waited for.
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void renderBand(Band band, List<PaintPath> paths, int top, int bottom, int[] pixels, int offset,
+                            boolean clear)
+    {
+        if (clear)
+        {
+            int count = (bottom - top) * width;
+            for (int i = 0; i < count; i++)
+            {
+                pixels[offset + i] = backgroundColor;
+            }
+        }
+
+        band.prepare(top, bottom);
+        for (int i = 0; i < paths.size(); i++)
+        {
+            PaintPath p = paths.get(i);
+
+            // Skip paths that can't reach the band.
+            float reach = radius * p.getMaxWidth() + 1;
+            if (p.getTop() * height - reach >= bottom || p.getBottom() * height + reach <= top)
+                continue;
+
+            band.drawPath(p);
+            band.blend(p.getColor() | 0xff000000, pixels, offset);
+        }
+    }
+
+    /**
+     * The working state for drawing one band, owned by a single thread.
+     */
+    private class Band
+    {
+        int top;
+        int bottom;
+
+        // coverage holds how much of each pixel in the band the current path
+        // covers, from 0 to 1, within the area set by the covered* bounds.
+        float[] coverage = new float[0];
+        int coveredLeft;
+        int coveredTop;
+        int coveredRight;
+        int coveredBottom;
+
+        void prepare(int top, int bottom)
+        {
+            this.top = top;
+            this.bottom = bottom;
+            if (coverage.length < (bottom - top) * width)
+                coverage = new float[(bottom - top) * width];
+        }
+
+        // Records the coverage of the whole path. Taking the greatest coverage
+        // of any segment, rather than adding them up, means the overlapping
+        // ends of neighboring segments aren't darker than the rest.
+        void drawPath(PaintPath p)
+        {
+            coveredLeft = width;
+            coveredTop = bottom;
+            coveredRight = 0;
+            coveredBottom = top;
+
+            float x0 = p.getX(0) * width;
+            float y0 = p.getY(0) * height;
+            float r0 = p.getWidth(0) * radius;
+            if (p.getPointCount() == 1)
+            {
+                drawSegment(x0, y0, r0, x0, y0, r0);
+                return;
+            }
+
+            for (int i = 1; i < p.getPointCount(); i++)
+            {
+                float cx = p.getX(i - 1) * width;
+                float cy = p.getY(i - 1) * height;
+                float x1 = (p.getX(i - 1) + p.getX(i)) / 2 * width;
+                float y1 = (p.getY(i - 1) + p.getY(i)) / 2 * height;
+                float r1 = (p.getWidth(i - 1) + p.getWidth(i)) / 2 * radius;
+
+                // A quad's distance from its chords shrinks with the square of the
+                // number of them, in proportion to how sharply it bends.
+                float ddx = x0 - 2 * cx + x1;
+                float ddy = y0 - 2 * cy + y1;
+                float bend = (float) Math.sqrt(ddx * ddx + ddy * ddy);
+                int steps = Math.max(1, (int) Math.ceil(Math.sqrt(bend / (4 * FLATNESS))));
+
+                float lastX = x0;
+                float lastY = y0;
+                float lastR = r0;
+                for (int s = 1; s <= steps; s++)
+                {
+                    float t = (float) s / steps;
+                    float u = 1 - t;
+                    float x = u * u * x0 + 2 * u * t * cx + t * t * x1;
+                    float y = u * u * y0 + 2 * u * t * cy + t * t * y1;
+                    float r = r0 + (r1 - r0) * t;
+                    drawSegment(lastX, lastY, lastR, x, y, r);
+                    lastX = x;
+                    lastY = y;
+                    lastR = r;
+                }
+
+                x0 = x1;
+                y0 = y1;
+                r0 = r1;
+            }
+        }
+
+        // Covers the pixels within the radius of the line from (ax, ay) to (bx, by),
+        // which goes from ar to br along it, with a pixel-wide ramp at the edge
+        // for anti-aliasing.
+        void drawSegment(float ax, float ay, float ar, float bx, float by, float br)
+        {
+            float reach = Math.max(ar, br) + 0.5f;
+            int left = Math.max(0, (int) Math.floor(Math.min(ax, bx) - reach));
+            int right = Math.min(width, (int) Math.ceil(Math.max(ax, bx) + reach));
+            int segmentTop = Math.max(top, (int) Math.floor(Math.min(ay, by) - reach));
+            int segmentBottom = Math.min(bottom, (int) Math.ceil(Math.max(ay, by) + reach));
+            if (left >= right || segmentTop >= segmentBottom)
+                return;
+
+            coveredLeft = Math.min(coveredLeft, left);
+            coveredTop = Math.min(coveredTop, segmentTop);
+            coveredRight = Math.max(coveredRight, right);
+            coveredBottom = Math.max(coveredBottom, segmentBottom);
+
+            float dx = bx - ax;
+            float dy = by - ay;
+            float lengthSquared = dx * dx + dy * dy;
+
+            for (int y = segmentTop; y < segmentBottom; y++)
+            {
+                int row = (y - top) * width;
+                float py = y + 0.5f - ay;
+                for (int x = left; x < right; x++)
+                {
+                    float px = x + 0.5f - ax;
+
+                    // Distance from the pixel center to the nearest point on the line.
+                    float t = 0;
+                    if (lengthSquared > 0)
+                        t = Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+                    float ex = px - t * dx;
+                    float ey = py - t * dy;
+                    float distanceSquared = ex * ex + ey * ey;
+
+                    // The radius where the pixel is closest to the line.
+                    float r = ar + (br - ar) * t;
+                    float outer = r + 0.5f;
+                    float inner = r > 0.5f ? r - 0.5f : 0;
+
+                    // Only the edge needs the square root.
+                    float c;
+                    if (distanceSquared >= outer * outer)
+                        continue;
+                    else if (distanceSquared <= inner * inner)
+                        c = 1;
+                    else
+                        c = outer - (float) Math.sqrt(distanceSquared);
+
+                    if (c > coverage[row + x])
+                        coverage[row + x] = c;
+                }
+            }
+        }
+
+        // Blends the color into pixels by the recorded coverage, and resets the
+        // coverage for the next path.
+        void blend(int color, int[] pixels, int offset)
+        {
+            float alpha = (color >>> 24) / 255f;
+            float red = (color >> 16) & 0xff;
+            float green = (color >> 8) & 0xff;
+            float blue = color & 0xff;
+
+            for (int y = coveredTop; y < coveredBottom; y++)
+            {
+                int row = (y - top) * width;
+                for (int x = coveredLeft; x < coveredRight; x++)
+                {
+                    float c = coverage[row + x];
+                    if (c <= 0)
+                        continue;
+                    coverage[row + x] = 0;
+
+                    int i = offset + row + x;
+                    pixels[i] = blendPixel(pixels[i], c * alpha, red, green, blue);
+                }
+            }
+        }
+    }
+
+    // Draws a color with alpha sa (0 to 1) over the pixel dst.
+    private static int blendPixel(int dst, float sa, float red, float green, float blue)
+    {
+        float da = (dst >>> 24) / 255f;
+        float oa = sa + da * (1 - sa);
+        if (oa <= 0)
+            return 0;
+
+        float dw = da * (1 - sa);
+        int r = (int) ((red * sa + ((dst >> 16) & 0xff) * dw) / oa + 0.5f);
+        int g = (int) ((green * sa + ((dst >> 8) & 0xff) * dw) / oa + 0.5f);
+        int b = (int) ((blue * sa + (dst & 0xff) * dw) / oa + 0.5f);
+        int a = (int) (oa * 255 + 0.5f);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,468 @@
+package com.avery.fingerpaint;
+
+/**
+ * Turns a PaintPath into a mesh of triangles, so that a stroke whose width
+ * changes along its length can be drawn with a single Canvas.drawVertices call.
+ *
+ * The center line is the same as PaintPathRenderer's: each point is the
+ * control point of a quad ending halfway to the next. It's flattened into
+ * short lines, and the stroke is crossed at each end of every line by four
+ * vertices: one on each edge, and one a pixel further out on each side where
+ * the color fades to transparent, because vertices aren't anti-aliased.
+ * Neighboring crossings are joined into three triangle strips (a fringe, the
+ * body and the other fringe), and the ends are closed with round caps made of
+ * triangle fans. A single point, or a sharp turn, is a filled circle.
+ *
+ * Vertices are indexed by 16 bit numbers, so a mesh holds at most
+ * MAX_VERTICES of them, and a very long path is split into several meshes.
+ * Going the other way, append() builds several whole paths into one mesh, one
+ * after the other, exactly as each would have been on its own, so they can be
+ * drawn with one call.
+ *
+ * The arrays are kept from one path to the next and only ever grow, so once
+ * they're big enough, tessellating doesn't allocate.
+ */
+public class StrokeTessellator
+{
+    // Indices are read as unsigned shorts.
+    public static final int MAX_VERTICES = 65536;
+
+    // Quads are flattened into lines that stay within this many pixels of the curve.
+    private static final float FLATNESS = 0.1f;
+    private static final int MAX_STEPS = 32;
+
+    // The color fades out over this many pixels either side of the edge.
+    private static final float FRINGE = 0.5f;
+
+    // Where the line turns more sharply than this (the cosine of about 25
+    // degrees), which only happens at a cusp, crossing it square leaves a notch
+    // on the outside, so a round join is added.
+    private static final float JOIN_COSINE = 0.9f;
+
+    private static final int MAX_CAP_SEGMENTS = 24;
+    private static final int MAX_CAP_VERTICES = 2 * (2 * MAX_CAP_SEGMENTS + 1) + 1;
+    private static final int MAX_CAP_INDICES = 2 * MAX_CAP_SEGMENTS * 9;
+
+    // Enough line points always fit alongside two caps, or one dot.
+    private static final int MAX_LINE_POINTS = (MAX_VERTICES - 2 * MAX_CAP_VERTICES) / 4;
+
+    private float scaleX;
+    private float scaleY;
+    private float radius;
+
+    // The mesh: x, y pairs, a color for each vertex, and three indices per triangle.
+    private float[] vertices;
+    private int[] colors;
+    private short[] indices;
+    private int vertexCount;
+    private int indexCount;
+
+    // The flattened center line: x, y and radius in pixels for each point.
+    private float[] line;
+    private int lineCount;
+
+    // The path's color, opaque and faded out.
+    private int solid;
+    private int clear;
+
+    // The number of vertices in the mesh before the current path.
+    private int pathBase;
+
+    public StrokeTessellator()
+    {
+        vertices = new float[512];
+        colors = new int[256];
+        indices = new short[768];
+        line = new float[192];
+    }
+
+    /**
+     * Sets the view size that the abstract coordinates are scaled by, and the
+     * radius in pixels of a point of width 1.
+     */
+    public void setScale(float scaleX, float scaleY, float radius)
+    {
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        this.radius = radius;
+    }
+
+    /**
+     * Builds the mesh for the segments added to the path along with points
+     * firstIndex onwards, or the whole path if firstIndex is 0, as
+     * PaintPathRenderer.drawSegments() does. If it doesn't all fit in one mesh
+     * the mesh stops short, with a round end, and the index of the first point
+     * left out is returned; otherwise it returns the point count.
+     */
+    public int tessellate(PaintPath p, int firstIndex)
+    {
+        reset();
+        return build(p, firstIndex);
+    }
+
+    /**
+     * Empties the mesh, ready for paths to be appended.
+     */
+    public void reset()
+    {
+        vertexCount = 0;
+        indexCount = 0;
+    }
+
+    /**
+     * Adds the whole path to the end of the mesh, as tessellate() would build it
+     * alone. Returns false, leaving the mesh as it was, if it doesn't all fit.
+     */
+    public boolean append(PaintPath p)
+    {
+        int vertexBase = vertexCount;
+        int indexBase = indexCount;
+        if (build(p, 0) == p.getPointCount() && vertexCount <= MAX_VERTICES)
+            return true;
+
+        vertexCount = vertexBase;
+        indexCount = indexBase;
+        return false;
+    }
+
+    private int build(PaintPath p, int firstIndex)
+    {
+        pathBase = vertexCount;
+        lineCount = 0;
+        solid = p.getColor() | 0xff000000;
+        clear = p.getColor() & 0x00ffffff;
+
+        int count = p.getPointCount();
+        float x0 = p.getX(0) * scaleX;
+        float y0 = p.getY(0) * scaleY;
+        float w0 = p.getWidth(0);
+        if (count == 1)
+        {
+            addLinePoint(x0, y0, w0 * radius);
+            addDot(x0, y0, w0 * radius);
+            return count;
+        }
+
+        int start = Math.max(1, firstIndex);
+        if (start > 1)
+        {
+            // The previous segment ended halfway between the two points before this one.
+            x0 = (p.getX(start - 2) + p.getX(start - 1)) / 2 * scaleX;
+            y0 = (p.getY(start - 2) + p.getY(start - 1)) / 2 * scaleY;
+            w0 = (p.getWidth(start - 2) + p.getWidth(start - 1)) / 2;
+        }
+        addLinePoint(x0, y0, w0 * radius);
+
+        int i = start;
+        while (i < count && lineCount + MAX_STEPS <= MAX_LINE_POINTS)
+        {
+            float cx = p.getX(i - 1) * scaleX;
+            float cy = p.getY(i - 1) * scaleY;
+            float x1 = (p.getX(i - 1) + p.getX(i)) / 2 * scaleX;
+            float y1 = (p.getY(i - 1) + p.getY(i)) / 2 * scaleY;
+            float w1 = (p.getWidth(i - 1) + p.getWidth(i)) / 2;
+
+            // A quad's distance from its chords shrinks with the square of the
+            // number of them, in proportion to how sharply it bends.
+            float ddx = x0 - 2 * cx + x1;
+            float ddy = y0 - 2 * cy + y1;
+            float bend = (float) Math.sqrt(ddx * ddx + ddy * ddy);
+            int steps = (int) Math.ceil(Math.sqrt(bend / (4 * FLATNESS)));
+
+            // The edges are further out than the center line, so on a tight curve
+            // they need more, short enough that each turns the stroke by at most
+            // the angle whose arc at the edge stays within FLATNESS of its chord.
+            float r = Math.max(w0, w1) * radius;
+            if (r > FLATNESS)
+            {
+                float ax = cx - x0;
+                float ay = cy - y0;
+                float bx = x1 - cx;
+                float by = y1 - cy;
+                float turn = (float) Math.atan2(Math.abs(ax * by - ay * bx), ax * bx + ay * by);
+                steps = Math.max(steps, (int) Math.ceil(turn / (2 * Math.sqrt(2 * FLATNESS / r))));
+            }
+            steps = Math.min(MAX_STEPS, Math.max(1, steps));
+
+            for (int s = 1; s <= steps; s++)
+            {
+                float t = (float) s / steps;
+                float u = 1 - t;
+                addLinePoint(u * u * x0 + 2 * u * t * cx + t * t * x1,
+                             u * u * y0 + 2 * u * t * cy + t * t * y1,
+                             (w0 + (w1 - w0) * t) * radius);
+            }
+
+            x0 = x1;
+            y0 = y1;
+            w0 = w1;
+            i++;
+        }
+
+        if (lineCount == 1)
+            addDot(line[0], line[1], line[2]);
+        else
+            addStroke(start == 1);
+        return i;
+    }
+
+    /**
+     * The vertices, as x, y pairs. Only the first getVertexCount() * 2 entries
+     * are meaningful.
+     */
+    public float[] getVertices()
+    {
+        return vertices;
+    }
+
+    public int[] getColors()
+    {
+        return colors;
+    }
+
+    public int getVertexCount()
+    {
+        return vertexCount;
+    }
+
+    /**
+     * The triangles, as three indices into the vertices each. Only the first
+     * getIndexCount() entries are meaningful.
+     */
+    public short[] getIndices()
+    {
+        return indices;
+    }
+
+    public int getIndexCount()
+    {
+        return indexCount;
+    }
+
+    /**
+     * The flattened center line, as x, y and radius for each point. Only the
+     * first getLineCount() * 3 entries are meaningful.
+     */
+    public float[] getLine()
+    {
+        return line;
+    }
+
+    public int getLineCount()
+    {
+        return lineCount;
+    }
+
+    // Points within a hundredth of a pixel of the one before are merged into it,
+    // since there's no direction between them to cross the stroke at.
+    private void addLinePoint(float x, float y, float r)
+    {
+        if (lineCount > 0)
+        {
+            int last = (lineCount - 1) * 3;
+            float dx = x - line[last];
+            float dy = y - line[last + 1];
+            if (dx * dx + dy * dy < 0.0001f)
+            {
+                line[last + 2] = Math.max(line[last + 2], r);
+                return;
+            }
+        }
+
+        if ((lineCount + 1) * 3 > line.length)
+            line = grow(line, (lineCount + 1) * 3);
+
+        line[lineCount * 3] = x;
+        line[lineCount * 3 + 1] = y;
+        line[lineCount * 3 + 2] = r;
+        lineCount++;
+    }
+
+    private void addStroke(boolean startCap)
+    {
+        reserve(lineCount * 4 + 2 * MAX_CAP_VERTICES, (lineCount - 1) * 18 + MAX_CAP_INDICES);
+
+        float lastX = 0;
+        float lastY = 0;
+        for (int k = 0; k < lineCount; k++)
+        {
+            // The stroke is crossed square to the average of the directions of the
+            // lines either side.
+            float tx = 0;
+            float ty = 0;
+            if (k > 0)
+            {
+                tx += lastX;
+                ty += lastY;
+            }
+            if (k < lineCount - 1)
+            {
+                float dx = line[k * 3 + 3] - line[k * 3];
+                float dy = line[k * 3 + 4] - line[k * 3 + 1];
+                float length = (float) Math.sqrt(dx * dx + dy * dy);
+                lastX = dx / length;
+                lastY = dy / length;
+                tx += lastX;
+                ty += lastY;
+            }
+            float length = (float) Math.sqrt(tx * tx + ty * ty);
+            if (length > 0)
+            {
+                tx /= length;
+                ty /= length;
+            }
+            else
+            {
+                // The line turns right back on itself.
+                tx = lastX;
+                ty = lastY;
+            }
+
+            float x = line[k * 3];
+            float y = line[k * 3 + 1];
+            float r = line[k * 3 + 2];
+            float inner = Math.max(0, r - FRINGE);
+            float outer = r + FRINGE;
+
+            int first = vertexCount;
+            addVertex(x - ty * outer, y + tx * outer, clear);
+            addVertex(x - ty * inner, y + tx * inner, solid);
+            addVertex(x + ty * inner, y - tx * inner, solid);
+            addVertex(x + ty * outer, y - tx * outer, clear);
+
+            if (k > 0)
+            {
+                for (int j = 0; j < 3; j++)
+                {
+                    addQuad(first - 4 + j, first - 3 + j, first + 1 + j, first + j);
+                }
+            }
+        }
+
+        if (startCap)
+        {
+            float dx = line[3] - line[0];
+            float dy = line[4] - line[1];
+            float length = (float) Math.sqrt(dx * dx + dy * dy);
+            addCap(line[0], line[1], line[2], -dx / length, -dy / length, 1);
+        }
+        int last = (lineCount - 1) * 3;
+        addCap(line[last], line[last + 1], line[last + 2], lastX, lastY, 1);
+
+        for (int k = 1; k < lineCount - 1; k++)
+        {
+            // Joins are left out if they'd overflow the mesh, which would take a
+            // very long path with a great many cusps.
+            if (vertexCount - pathBase + MAX_CAP_VERTICES > MAX_VERTICES)
+                break;
+
+            float ax = line[k * 3] - line[k * 3 - 3];
+            float ay = line[k * 3 + 1] - line[k * 3 - 2];
+            float bx = line[k * 3 + 3] - line[k * 3];
+            float by = line[k * 3 + 4] - line[k * 3 + 1];
+            float dot = ax * bx + ay * by;
+            if (dot < JOIN_COSINE * (float) Math.sqrt((ax * ax + ay * ay) * (bx * bx + by * by)))
+            {
+                reserve(MAX_CAP_VERTICES, MAX_CAP_INDICES);
+                addCap(line[k * 3], line[k * 3 + 1], line[k * 3 + 2], 1, 0, 2);
+            }
+        }
+    }
+
+    private void addDot(float x, float y, float r)
+    {
+        reserve(MAX_CAP_VERTICES, MAX_CAP_INDICES);
+        addCap(x, y, r, 1, 0, 2);
+    }
+
+    // Adds a fan of triangles covering halfTurns half circles around (x, y),
+    // centered on the direction (dx, dy), with a faded rim.
+    private void addCap(float x, float y, float r, float dx, float dy, int halfTurns)
+    {
+        int segments = halfTurns * Math.max(4, Math.min(MAX_CAP_SEGMENTS, (int) Math.ceil(Math.sqrt(r) * 3)));
+        double step = -Math.PI * halfTurns / segments;
+        float cos = (float) Math.cos(step);
+        float sin = (float) Math.sin(step);
+        float inner = Math.max(0, r - FRINGE);
+        float outer = r + FRINGE;
+
+        // Start square to the direction, on its left, and rotate round through it.
+        float vx = -dy;
+        float vy = dx;
+
+        int center = vertexCount;
+        addVertex(x, y, solid);
+        for (int j = 0; j <= segments; j++)
+        {
+            addVertex(x + vx * inner, y + vy * inner, solid);
+            addVertex(x + vx * outer, y + vy * outer, clear);
+
+            if (j > 0)
+            {
+                int in0 = vertexCount - 4;
+                addTriangle(center, in0, in0 + 2);
+                addQuad(in0, in0 + 1, in0 + 3, in0 + 2);
+            }
+
+            float a = vx;
+            vx = a * cos - vy * sin;
+            vy = a * sin + vy * cos;
+        }
+    }
+
+    private void addVertex(float x, float y, int color)
+    {
+        vertices[vertexCount * 2] = x;
+        vertices[vertexCount * 2 + 1] = y;
+        colors[vertexCount] = color;
+        vertexCount++;
+    }
+
+    // Two triangles covering the quad with corners a, b, c and d in order.
+    private void addQuad(int a, int b, int c, int d)
+    {
+        addTriangle(a, b, c);
+        addTriangle(a, c, d);
+    }
+
+    private void addTriangle(int a, int b, int c)
+    {
+        indices[indexCount++] = (short) a;
+        indices[indexCount++] = (short) b;
+        indices[indexCount++] = (short) c;
+    }
+
+    // Makes sure there's room for this many more vertices and indices.
+    private void reserve(int moreVertices, int moreIndices)
+    {
+        int neededVertices = vertexCount + moreVertices;
+        if (neededVertices > colors.length)
+        {
+            colors = grow(colors, neededVertices);
+            vertices = grow(vertices, neededVertices * 2);
+        }
+        if (indexCount + moreIndices > indices.length)
+            indices = grow(indices, indexCount + moreIndices);
+    }
+
+    private static float[] grow(float[] a, int needed)
+    {
+        float[] larger = new float[Math.max(needed, a.length * 2)];
+        System.arraycopy(a, 0, larger, 0, a.length);
+        return larger;
+    }
+
+    private static int[] grow(int[] a, int needed)
+    {
+        int[] larger = new int[Math.max(needed, a.length * 2)];
+        System.arraycopy(a, 0, larger, 0, a.length);
+        return larger;
+    }
+
+    private static short[] grow(short[] a, int needed)
+    {
+        short[] larger = new short[Math.max(needed, a.length * 2)];
+        System.arraycopy(a, 0, larger, 0, a.length);
+        return larger;
+    }
+}
@@ -0,0 +1,248 @@
+package com.avery.fingerpaint;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+/**
+ * Keeps bitmaps of the static parts of the palette's swatches, so that
+ * redrawing one that looks the same as before is a single bitmap draw rather
+ * than several anti-aliased circles and text. Anything that changes while
+ * it's being dragged, like a primary paint's indicator, is drawn live over it.
+ *
+ * Each look is identified by the class of view, its size, its color and a
+ * state number that covers anything else that changes how it looks, such as
+ * being selected. The least recently used bitmaps are dropped once they use
+ * more than the memory budget.
+ *
+ * Only software canvases draw through the cache. They redraw every child on
+ * every frame of the palette animation, which only moves them, so those are
+ * all hits. A hardware accelerated canvas keeps each child's display list
+ * while it's only moved, so by the time a child is drawn again its look has
+ * usually changed, and a bitmap would only be allocated to be used once.
+ *
+ * A look is also only cached once a swatch has been drawn with it twice in a
+ * row. One that changes on every frame, like the current paint while a slider
+ * is dragged, is drawn directly instead of allocating a bitmap each frame.
+ */
+public class SwatchCache
+{
+    /**
+     * Interface definition for a view that can be drawn through the cache.
+     */
+    public interface Swatch
+    {
+        /**
+         * Draws the cached part of the view's current look onto c, which is
+         * the size of the view.
+         */
+        public void drawSwatch(Canvas c);
+    }
+
+    /**
+     * The look a swatch was last drawn with, which each swatch keeps for the
+     * cache to tell whether it's changing.
+     */
+    public static class Look
+    {
+        private int width;
+        private int height;
+        private int color;
+        private int state;
+        private boolean drawn;
+
+        private boolean set(int width, int height, int color, int state)
+        {
+            boolean same = drawn && this.width == width && this.height == height
+                    && this.color == color && this.state == state;
+            this.width = width;
+            this.height = height;
+            this.color = color;
+            this.state = state;
+            drawn = true;
+            return same;
+        }
+    }
+
+    public static final int DEFAULT_MEMORY_BUDGET = 4 * 1024 * 1024;
+
+    private static final int MAX_ENTRIES = 64;
+
+    private Entry[] entries;
+    private int entryCount;
+    private int memoryUsage;
+    private int memoryBudget;
+    private long useCount;
+
+    private long hits;
+    private long misses;
+    private long directDraws;
+
+    public SwatchCache()
+    {
+        entries = new Entry[MAX_ENTRIES];
+        memoryBudget = DEFAULT_MEMORY_BUDGET;
+    }
+
+    public void setMemoryBudget(int bytes)
+    {
+        this.memoryBudget = bytes;
+        trim(0);
+    }
+
+    /**
+     * Draws the swatch onto c, from the cache if the same look was drawn
+     * before, and otherwise by calling drawSwatch(), keeping the result if
+     * the swatch's look has settled. look is the swatch's own.
+     */
+    public void draw(Canvas c, Swatch swatch, Look look, int width, int height, int color, int state)
+    {
+        if (width <= 0 || height <= 0)
+            return;
+
+        boolean settled = look.set(width, height, color, state);
+        if (c.isHardwareAccelerated())
+        {
+            directDraws++;
+            swatch.drawSwatch(c);
+            return;
+        }
+
+        Entry entry = find(swatch.getClass(), width, height, color, state);
+        if (entry != null)
+        {
+            hits++;
+        }
+        else if (!settled)
+        {
+            directDraws++;
+            swatch.drawSwatch(c);
+            return;
+        }
+        else
+        {
+            misses++;
+            entry = add(swatch, width, height, color, state);
+        }
+
+        entry.lastUsed = ++useCount;
+        c.drawBitmap(entry.bitmap, 0, 0, null);
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * The number of draws that skipped the cache, because the canvas was
+     * hardware accelerated or the swatch's look was changing.
+     */
+    public long getDirectDraws()
+    {
+        return directDraws;
+    }
+
+    /**
+     * The fraction of draws through the cache, from 0 to 1, that were drawn
+     * from it.
+     */
+    public float getHitRate()
+    {
+        long draws = hits + misses;
+        return draws == 0 ? 0 : (float) hits / draws;
+    }
+
+    public int getMemoryUsage()
+    {
+        return memoryUsage;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Swatch cache: " + hits + " hits, " + misses + " misses (" + Math.round(getHitRate() * 100)
+                + "% hit rate), " + directDraws + " drawn directly, " + entryCount + " swatches, "
+                + memoryUsage / 1024 + " KB";
+    }
+
+    // There are only a few dozen entries, so a linear search is quick and
+    // doesn't allocate, unlike boxing a key for a map.
+    private Entry find(Class<?> type, int width, int height, int color, int state)
+    {
+        for (int i = 0; i < entryCount; i++)
+        {
+            Entry e = entries[i];
+            if (e.type == type && e.width == width && e.height == height && e.color == color && e.state == state)
+                return e;
+        }
+        return null;
+    }
+
+    private Entry add(Swatch swatch, int width, int height, int color, int state)
+    {
+        int bytes = width * height * 4;
+        trim(bytes);
+        if (entryCount == MAX_ENTRIES)
+            remove(leastRecentlyUsed());
+
+        Entry e = new Entry();
+        e.type = swatch.getClass();
+        e.width = width;
+        e.height = height;
+        e.color = color;
+        e.state = state;
+        e.bytes = bytes;
+        e.bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        swatch.drawSwatch(new Canvas(e.bitmap));
+
+        entries[entryCount++] = e;
+        memoryUsage += bytes;
+        return e;
+    }
+
+    // Drops least recently used entries until there's room for another of extraBytes.
+    private void trim(int extraBytes)
+    {
+        while (entryCount > 0 && memoryUsage + extraBytes > memoryBudget)
+        {
+            remove(leastRecentlyUsed());
+        }
+    }
+
+    private int leastRecentlyUsed()
+    {
+        int oldest = 0;
+        for (int i = 1; i < entryCount; i++)
+        {
+            if (entries[i].lastUsed < entries[oldest].lastUsed)
+                oldest = i;
+        }
+        return oldest;
+    }
+
+    private void remove(int i)
+    {
+        // The bitmap isn't recycled, because a view's display list may still be
+        // drawing it until the view next redraws; it's freed once unused.
+        memoryUsage -= entries[i].bytes;
+        entries[i] = entries[--entryCount];
+        entries[entryCount] = null;
+    }
+
+    private static class Entry
+    {
+        Class<?> type;
+        int width;
+        int height;
+        int color;
+        int state;
+        int bytes;
+        Bitmap bitmap;
+        long lastUsed;
+    }
+}
@@ -0,0 +1,557 @@
+package com.avery.fingerpaint;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A drawing surface split into square tiles. Tiles are only allocated where
+ * something has been drawn, so a mostly blank painting uses little memory.
+ *
+ * Allocated tiles are kept in a least recently used list. Whenever they use more
+ * than the memory budget, the least recently used ones are dropped, and are
+ * redrawn by the TileSource the next time they're needed. The budget should
+ * cover at least the visible tiles, or those will be redrawn on every frame.
+ *
+ * Tiles can use any Bitmap.Config that a Canvas can draw into:
+ *   ARGB_8888 - 4 bytes per pixel, full quality. Needed if the background is
+ *               transparent.
+ *   RGB_565   - 2 bytes per pixel, so twice as many tiles fit in the budget.
+ *               No alpha channel, so only suitable for an opaque background.
+ *               Colors are rounded to 5 bits of red and blue and 6 of green,
+ *               which can show as faint banding in anti-aliased edges.
+ *
+ * Snapshots only copy the tiles drawn on since the last snapshot taken or
+ * restored; the rest share that snapshot's copies, so taking one costs in
+ * proportion to what changed, and many fit in the memory a full copy takes.
+ */
+public class TiledCanvas
+{
+    /**
+     * Redraws the contents of a tile that was dropped to stay within the budget.
+     */
+    public interface TileSource
+    {
+        /**
+         * Draw everything that intersects bounds onto c. The canvas is already
+         * translated, so drawing uses the same coordinates as the TiledCanvas.
+         */
+        public void redrawTile(Canvas c, Rect bounds);
+    }
+
+    public static final int TILE_SIZE = 256;
+    public static final int DEFAULT_MEMORY_BUDGET = 32 * 1024 * 1024;
+
+    private int columns;
+    private int rows;
+    private int backgroundColor;
+    private Bitmap.Config config;
+    private int tileBytes;
+    private TileSource source;
+    private int memoryBudget;
+
+    // tiles holds the allocated tile for each index (row * columns + column), and
+    // painted records whether anything was drawn there, even if it was dropped since.
+    private Tile[] tiles;
+    private boolean[] painted;
+
+    // changed records which tiles were drawn on since baseSnapshot, the last
+    // snapshot taken or restored; the others still match its copies.
+    // snapshotMemoryUsage counts the bytes of every copy snapshots still hold.
+    private boolean[] changed;
+    private Snapshot baseSnapshot;
+    private int snapshotMemoryUsage;
+
+    // Tiles are linked in order of use: head is the most recently used.
+    private Tile head;
+    private Tile tail;
+    private int tileCount;
+
+    private Rect bounds; // reusable rectangle
+    private Rect tileBounds; // reusable rectangle
+
+    // The indices of the tiles a batch of paths covers. A tile is in the list
+    // if its batchStamps entry matches batchStamp, which changes every batch.
+    private int[] batchTiles;
+    private int batchTileCount;
+    private int[] batchStamps;
+    private int batchStamp;
+
+    public TiledCanvas(int width, int height, int backgroundColor, TileSource source)
+    {
+        this(width, height, backgroundColor, Bitmap.Config.ARGB_8888, source);
+    }
+
+    public TiledCanvas(int width, int height, int backgroundColor, Bitmap.Config config, TileSource source)
+    {
+        this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.backgroundColor = backgroundColor;
+        this.config = config;
+        this.tileBytes = getTileBytes(config);
+        this.source = source;
+        this.memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+        tiles = new Tile[columns * rows];
+        painted = new boolean[columns * rows];
+        changed = new boolean[columns * rows];
+        batchTiles = new int[columns * rows];
+        batchStamps = new int[columns * rows];
+        bounds = new Rect();
+        tileBounds = new Rect();
+    }
+
+    public void setMemoryBudget(int bytes)
+    {
+        this.memoryBudget = bytes;
+        trim();
+    }
+
+    /**
+     * Number of bytes used by the allocated tiles.
+     */
+    public int getMemoryUsage()
+    {
+        return tileCount * tileBytes;
+    }
+
+    public int getTileCount()
+    {
+        return tileCount;
+    }
+
+    public Bitmap.Config getConfig()
+    {
+        return config;
+    }
+
+    /**
+     * Number of bytes a single tile uses in the given format.
+     */
+    public static int getTileBytes(Bitmap.Config config)
+    {
+        int bytesPerPixel = 4;
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444)
+            bytesPerPixel = 2;
+        else if (config == Bitmap.Config.ALPHA_8)
+            bytesPerPixel = 1;
+        return TILE_SIZE * TILE_SIZE * bytesPerPixel;
+    }
+
+    /**
+     * Draws the whole path onto the tiles it covers.
+     */
+    public void drawPath(PaintPathRenderer r, PaintPath p)
+    {
+        drawOnTiles(r, p, 0);
+    }
+
+    /**
+     * Draws the segments for points firstIndex onwards onto the tiles they cover.
+     */
+    public void drawSegments(PaintPathRenderer r, PaintPath p, int firstIndex)
+    {
+        drawOnTiles(r, p, firstIndex);
+    }
+
+    /**
+     * Draws as many of paths from onwards (up to to) as the renderer can batch
+     * together onto the tiles they cover, with exactly the same result as
+     * drawing each of them with drawPath(). Returns the index of the first path
+     * left out, so a list is drawn with a loop:
+     *   for (int i = 0; i < paths.size(); ) i = tiles.drawBatch(r, paths, i, paths.size());
+     */
+    public int drawBatch(PaintPathRenderer r, List<PaintPath> paths, int from, int to)
+    {
+        int end = r.batch(paths, from, to);
+
+        // The batch is only drawn on the tiles one of its paths covers, so no
+        // more are allocated than drawing them one at a time would.
+        batchStamp++;
+        batchTileCount = 0;
+        boolean redrawn = false;
+        for (int i = from; i < end; i++)
+        {
+            r.getBounds(paths.get(i), 0, bounds);
+            for (int row = firstRow(bounds); row <= lastRow(bounds); row++)
+            {
+                for (int column = firstColumn(bounds); column <= lastColumn(bounds); column++)
+                {
+                    int index = row * columns + column;
+                    if (batchStamps[index] == batchStamp)
+                        continue;
+
+                    batchStamps[index] = batchStamp;
+                    batchTiles[batchTileCount++] = index;
+                    redrawn |= tiles[index] == null && painted[index];
+                    loadTile(index);
+                }
+            }
+        }
+
+        // Redrawing a dropped tile uses the renderer, which replaces the batch.
+        if (redrawn)
+            r.batch(paths, from, to);
+
+        for (int k = 0; k < batchTileCount; k++)
+        {
+            Tile tile = tiles[batchTiles[k]];
+            changed[tile.index] = true;
+            tile.canvas.save();
+            tile.canvas.translate(-(tile.index % columns) * TILE_SIZE, -(tile.index / columns) * TILE_SIZE);
+            r.drawBatch(tile.canvas);
+            tile.canvas.restore();
+        }
+        return end;
+    }
+
+    /**
+     * Draws the tiles that intersect clip onto c. Blank areas are filled with the
+     * background color.
+     */
+    public void draw(Canvas c, Rect clip)
+    {
+        if (backgroundColor != 0)
+            c.drawColor(backgroundColor);
+
+        for (int row = firstRow(clip); row <= lastRow(clip); row++)
+        {
+            for (int column = firstColumn(clip); column <= lastColumn(clip); column++)
+            {
+                int index = row * columns + column;
+                if (!painted[index])
+                    continue;
+
+                Tile tile = loadTile(index);
+                c.drawBitmap(tile.bitmap, column * TILE_SIZE, row * TILE_SIZE, null);
+            }
+        }
+
+        trim();
+    }
+
+    /**
+     * Redraws the tiles that intersect area from the TileSource, for when
+     * something drawn there has to be taken away. Only tiles that are allocated
+     * are redrawn now; dropped ones will be when they're next needed anyway.
+     */
+    public void redraw(Rect area)
+    {
+        for (int row = firstRow(area); row <= lastRow(area); row++)
+        {
+            for (int column = firstColumn(area); column <= lastColumn(area); column++)
+            {
+                Tile tile = tiles[row * columns + column];
+                if (tile == null)
+                    continue;
+
+                tile.bitmap.eraseColor(backgroundColor);
+                redrawTile(tile.canvas, tile.index);
+                changed[tile.index] = true;
+            }
+        }
+    }
+
+    /**
+     * Drops all tiles, leaving the canvas blank.
+     */
+    public void clear()
+    {
+        while (tail != null)
+        {
+            dropTile(tail);
+        }
+        Arrays.fill(painted, false);
+        Arrays.fill(changed, true);
+    }
+
+    private void drawOnTiles(PaintPathRenderer r, PaintPath p, int firstIndex)
+    {
+        r.getBounds(p, firstIndex, bounds);
+
+        for (int row = firstRow(bounds); row <= lastRow(bounds); row++)
+        {
+            for (int column = firstColumn(bounds); column <= lastColumn(bounds); column++)
+            {
+                Tile tile = loadTile(row * columns + column);
+                changed[tile.index] = true;
+                tile.canvas.save();
+                tile.canvas.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+                if (firstIndex == 0)
+                    r.draw(tile.canvas, p);
+                else
+                    r.drawSegments(tile.canvas, p, firstIndex);
+                tile.canvas.restore();
+            }
+        }
+    }
+
+    // Returns the tile at index, allocating it if needed. If it had been
+    // dropped to stay within the budget, its contents are redrawn first.
+    private Tile loadTile(int index)
+    {
+        Tile tile = tiles[index];
+        if (tile != null)
+        {
+            moveToHead(tile);
+            return tile;
+        }
+
+        boolean dropped = painted[index];
+        tile = obtainTile(index);
+        if (dropped)
+            redrawTile(tile.canvas, index);
+        return tile;
+    }
+
+    private void redrawTile(Canvas c, int index)
+    {
+        setTileBounds(index);
+        c.save();
+        c.translate(-tileBounds.left, -tileBounds.top);
+        source.redrawTile(c, tileBounds);
+        c.restore();
+    }
+
+    private Tile obtainTile(int index)
+    {
+        Tile tile = new Tile();
+        tile.bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, config);
+        tile.canvas = new Canvas(tile.bitmap);
+        if (backgroundColor != 0)
+            tile.canvas.drawColor(backgroundColor);
+
+        tile.index = index;
+        tiles[index] = tile;
+        painted[index] = true;
+        tileCount++;
+        moveToHead(tile);
+        return tile;
+    }
+
+    // Drops least recently used tiles until within the memory budget.
+    // This only happens after drawing a frame, so that tiles are never
+    // dropped and redrawn part way through a series of paths being drawn.
+    private void trim()
+    {
+        while (tail != null && getMemoryUsage() > memoryBudget)
+        {
+            dropTile(tail);
+        }
+    }
+
+    private void dropTile(Tile tile)
+    {
+        unlink(tile);
+        tiles[tile.index] = null;
+        tile.bitmap.recycle();
+        tileCount--;
+    }
+
+    private void moveToHead(Tile tile)
+    {
+        if (tile == head)
+            return;
+
+        unlink(tile);
+        tile.next = head;
+        if (head != null)
+            head.prev = tile;
+        head = tile;
+        if (tail == null)
+            tail = tile;
+    }
+
+    private void unlink(Tile tile)
+    {
+        if (tile.prev != null)
+            tile.prev.next = tile.next;
+        if (tile.next != null)
+            tile.next.prev = tile.prev;
+        if (head == tile)
+            head = tile.next;
+        if (tail == tile)
+            tail = tile.prev;
+        tile.prev = null;
+        tile.next = null;
+    }
+
+    private void setTileBounds(int index)
+    {
+        int left = (index % columns) * TILE_SIZE;
+        int top = (index / columns) * TILE_SIZE;
+        tileBounds.set(left, top, left + TILE_SIZE, top + TILE_SIZE);
+    }
+
+    /**
+     * Takes a copy of every painted tile. Tiles that haven't been drawn on since
+     * the last snapshot taken or restored share its copies; the rest are copied,
+     * redrawing any that were dropped from the TileSource for the copy.
+     */
+    public Snapshot snapshot()
+    {
+        Snapshot base = baseSnapshot;
+        if (base != null && base.recycled)
+            base = null;
+
+        Snapshot snapshot = new Snapshot();
+        snapshot.owner = this;
+        snapshot.copies = new TileCopy[tiles.length];
+
+        for (int index = 0; index < tiles.length; index++)
+        {
+            if (!painted[index])
+                continue;
+
+            if (!changed[index] && base != null && base.copies[index] != null)
+            {
+                snapshot.copies[index] = base.copies[index];
+                snapshot.copies[index].references++;
+                continue;
+            }
+
+            Bitmap bitmap;
+            if (tiles[index] != null)
+            {
+                bitmap = tiles[index].bitmap.copy(config, false);
+            }
+            else
+            {
+                bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, config);
+                Canvas c = new Canvas(bitmap);
+                if (backgroundColor != 0)
+                    c.drawColor(backgroundColor);
+                redrawTile(c, index);
+            }
+
+            TileCopy copy = new TileCopy();
+            copy.bitmap = bitmap;
+            copy.references = 1;
+            snapshot.copies[index] = copy;
+            snapshot.copiedTileCount++;
+            snapshotMemoryUsage += tileBytes;
+        }
+
+        baseSnapshot = snapshot;
+        Arrays.fill(changed, false);
+        return snapshot;
+    }
+
+    /**
+     * Replaces the contents of the canvas with a copy of the snapshot.
+     * The snapshot is left untouched, so it can be restored again later.
+     */
+    public void restore(Snapshot snapshot)
+    {
+        clear();
+
+        for (int index = 0; index < tiles.length; index++)
+        {
+            if (snapshot.copies[index] != null)
+            {
+                Tile tile = obtainTile(index);
+                tile.canvas.drawBitmap(snapshot.copies[index].bitmap, 0, 0, null);
+            }
+        }
+
+        baseSnapshot = snapshot;
+        Arrays.fill(changed, false);
+    }
+
+    /**
+     * Number of bytes used by the copies held by snapshots of this canvas that
+     * haven't been recycled. Copies shared between snapshots count once.
+     */
+    public int getSnapshotMemoryUsage()
+    {
+        return snapshotMemoryUsage;
+    }
+
+    // A rect entirely left of or above the canvas gives a last column or row
+    // of -1, so loops over it draw nothing rather than allocating tile 0.
+
+    private int firstColumn(Rect r)
+    {
+        return Math.max(0, tileOf(r.left));
+    }
+
+    private int lastColumn(Rect r)
+    {
+        return Math.min(columns - 1, tileOf(r.right - 1));
+    }
+
+    private int firstRow(Rect r)
+    {
+        return Math.max(0, tileOf(r.top));
+    }
+
+    private int lastRow(Rect r)
+    {
+        return Math.min(rows - 1, tileOf(r.bottom - 1));
+    }
+
+    // The tile a coordinate falls in, rounding down: / rounds -10 up to tile 0.
+    private static int tileOf(int coordinate)
+    {
+        return coordinate >= 0 ? coordinate / TILE_SIZE : (coordinate + 1) / TILE_SIZE - 1;
+    }
+
+    /**
+     * A copy of the painted tiles of a TiledCanvas at some point in time.
+     */
+    public static class Snapshot
+    {
+        private TiledCanvas owner;
+        private TileCopy[] copies;
+        private int copiedTileCount;
+        private boolean recycled;
+
+        /**
+         * Number of tiles copied for this snapshot, rather than shared with
+         * the one before.
+         */
+        public int getCopiedTileCount()
+        {
+            return copiedTileCount;
+        }
+
+        /**
+         * Frees the copied tiles no other snapshot shares. The snapshot can't
+         * be restored afterwards.
+         */
+        public void recycle()
+        {
+            if (recycled)
+                return;
+
+            recycled = true;
+            for (TileCopy copy : copies)
+            {
+                if (copy != null && --copy.references == 0)
+                {
+                    copy.bitmap.recycle();
+                    owner.snapshotMemoryUsage -= owner.tileBytes;
+                }
+            }
+        }
+    }
+
+    // A tile's copy, shared by every snapshot taken while it didn't change.
+    private static class TileCopy
+    {
+        Bitmap bitmap;
+        int references;
+    }
+
+    private static class Tile
+    {
+        int index;
+        Bitmap bitmap;
+        Canvas canvas;
+        Tile prev;
+        Tile next;
+    }
+}
@@ -0,0 +1,190 @@
+package com.avery.fingerpaint;
+
+/**
+ * A fixed size ring buffer of raw touch samples, for passing them from the UI
+ * thread to a render thread without locking or allocating.
+ *
+ * Exactly one thread may add samples and exactly one other thread may take
+ * them. Each side only writes its own index, and publishes it with a volatile
+ * write after it has finished with the slot, so the other side always sees
+ * a sample completely written before it can take it, and a slot completely
+ * read before it's written again. Each side also keeps its last sight of the
+ * other's index, so it only has to read the volatile when that looks full (or
+ * empty).
+ *
+ * Samples are stored packed into parallel arrays, and taken one at a time into
+ * the consumer's current sample, which the getters read.
+ */
+public class TouchSampleQueue
+{
+    // The kinds of sample. A DOWN starts a stroke for its pointer, and an UP
+    // finishes it. A CANCEL finishes every stroke, and its pointer is unused.
+    public static final int DOWN = 0;
+    public static final int MOVE = 1;
+    public static final int UP = 2;
+    public static final int CANCEL = 3;
+
+    private final int mask;
+    private final int[] actions;
+    private final int[] pointerIds;
+    private final int[] colors;
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] pressures;
+    private final long[] times;
+
+    // head is the number of samples taken, only written by the consumer, and
+    // tail the number added, only written by the producer.
+    private volatile long head;
+    private volatile long tail;
+
+    // Only used by the producer.
+    private long producerTail;
+    private long cachedHead;
+
+    // Only used by the consumer.
+    private long consumerHead;
+    private long cachedTail;
+    private int action;
+    private int pointerId;
+    private int color;
+    private float x;
+    private float y;
+    private float pressure;
+    private long time;
+
+    /**
+     * Creates a queue holding up to capacity samples, which is rounded up to a
+     * power of two.
+     */
+    public TouchSampleQueue(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        mask = size - 1;
+        actions = new int[size];
+        pointerIds = new int[size];
+        colors = new int[size];
+        xs = new float[size];
+        ys = new float[size];
+        pressures = new float[size];
+        times = new long[size];
+    }
+
+    public int getCapacity()
+    {
+        return mask + 1;
+    }
+
+    /**
+     * How many more samples can be added before the queue is full. Only the
+     * producer may call this; the consumer may free more in the meantime.
+     */
+    public int remainingCapacity()
+    {
+        cachedHead = head;
+        return (int) (getCapacity() - (producerTail - cachedHead));
+    }
+
+    /**
+     * Adds a sample, returning false (and dropping it) if the queue is full.
+     * Only the producer may call this. color is the paint color for a DOWN,
+     * and x and y are in pixels.
+     */
+    public boolean offer(int action, int pointerId, int color, float x, float y, float pressure, long time)
+    {
+        long t = producerTail;
+        if (t - cachedHead > mask)
+        {
+            cachedHead = head;
+            if (t - cachedHead > mask)
+                return false;
+        }
+
+        int i = (int) t & mask;
+        actions[i] = action;
+        pointerIds[i] = pointerId;
+        colors[i] = color;
+        xs[i] = x;
+        ys[i] = y;
+        pressures[i] = pressure;
+        times[i] = time;
+
+        producerTail = t + 1;
+        tail = producerTail;
+        return true;
+    }
+
+    /**
+     * Takes the oldest sample into the current sample, returning false if the
+     * queue is empty. Only the consumer may call this.
+     */
+    public boolean poll()
+    {
+        long h = consumerHead;
+        if (h == cachedTail)
+        {
+            cachedTail = tail;
+            if (h == cachedTail)
+                return false;
+        }
+
+        int i = (int) h & mask;
+        action = actions[i];
+        pointerId = pointerIds[i];
+        color = colors[i];
+        x = xs[i];
+        y = ys[i];
+        pressure = pressures[i];
+        time = times[i];
+
+        consumerHead = h + 1;
+        head = consumerHead;
+        return true;
+    }
+
+    /**
+     * Whether there are no samples to take. Either side may call this, but it
+     * may be out of date by the time it returns.
+     */
+    public boolean isEmpty()
+    {
+        return head == tail;
+    }
+
+    // The sample most recently taken by poll(). Only the consumer may call these.
+
+    public int getAction()
+    {
+        return action;
+    }
+
+    public int getPointerId()
+    {
+        return pointerId;
+    }
+
+    public int getColor()
+    {
+        return color;
+    }
+
+    public float getX()
+    {
+        return x;
+    }
+
+    public float getY()
+    {
+        return y;
+    }
+
+    public float getPressure()
+    {
+        return pressure;
+    }
+
+    public long getTime()
+    {
+        return time;
+    }
+}
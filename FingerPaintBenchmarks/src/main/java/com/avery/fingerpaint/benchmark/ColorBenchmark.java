@@ -0,0 +1,118 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.CMYColor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Color conversion and mixing, as done whenever a paint is tweaked or the
+ * selected paints change.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ColorBenchmark
+{
+    private static final int SAMPLES = 1024; // a power of two, for masking
+
+    // The number of paints being mixed, from MIN_CUSTOM_COLORS to MAX_CUSTOM_COLORS in PaletteView.
+    @Param({"2", "3", "4", "5", "6", "7", "8", "9", "10", "11"})
+    public int paintCount;
+
+    private float[] cmy;
+    private int[] colors;
+    private int[] selected;
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        // A fixed seed so every run measures the same colors.
+        Random random = new Random(42);
+        cmy = new float[SAMPLES * 3];
+        colors = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++)
+        {
+            cmy[i * 3] = random.nextFloat();
+            cmy[i * 3 + 1] = random.nextFloat();
+            cmy[i * 3 + 2] = random.nextFloat();
+            colors[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        selected = new int[paintCount];
+    }
+
+    @Benchmark
+    public int toRGB()
+    {
+        int i = next++ & (SAMPLES - 1);
+        return CMYColor.toRGB(cmy[i * 3], cmy[i * 3 + 1], cmy[i * 3 + 2]);
+    }
+
+    @Benchmark
+    public CMYColor fromRGB()
+    {
+        return CMYColor.fromRGB(colors[next++ & (SAMPLES - 1)]);
+    }
+
+    @Benchmark
+    public int rgbToCMY()
+    {
+        return CMYColor.rgbToCMY(colors[next++ & (SAMPLES - 1)]);
+    }
+
+    @Benchmark
+    public int cmyToRGB()
+    {
+        // The sample colors double as packed CMY values.
+        return CMYColor.cmyToRGB(colors[next++ & (SAMPLES - 1)] & 0xffffff);
+    }
+
+    /**
+     * The mixing PaletteView does for the selected paints.
+     */
+    @Benchmark
+    public int mix()
+    {
+        // Mix a different run of colors each time, so the result can't be hoisted.
+        System.arraycopy(colors, next++ % (SAMPLES - paintCount), selected, 0, paintCount);
+        return CMYColor.mix(selected, paintCount);
+    }
+
+    /**
+     * The same mix done the way CMYColor.mix used to, with a CMYColor allocated
+     * for each paint, for comparison.
+     */
+    @Benchmark
+    public int mixWithObjects()
+    {
+        System.arraycopy(colors, next++ % (SAMPLES - paintCount), selected, 0, paintCount);
+
+        float c = 0;
+        float m = 0;
+        float y = 0;
+        for (int i = 0; i < paintCount; i++)
+        {
+            CMYColor color = CMYColor.fromRGB(selected[i]);
+            c += color.getC();
+            m += color.getM();
+            y += color.getY();
+        }
+        return CMYColor.toRGB(Math.min(1f, c), Math.min(1f, m), Math.min(1f, y));
+    }
+}
@@ -0,0 +1,79 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.CMYColor;
+import com.avery.fingerpaint.ColorMixer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selecting or deselecting a paint in mix mode, which updates the mix, for
+ * each mixing model, compared with mixing the whole selection again.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ColorMixerBenchmark
+{
+    @Param({"2", "11"})
+    public int paintCount;
+
+    @Param({"0", "1", "2"}) // ColorMixer.MODEL_ADDITIVE, MODEL_AVERAGE and MODEL_KUBELKA_MUNK
+    public int model;
+
+    private int[] colors;
+    private ColorMixer mixer;
+    private boolean toggled;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(42);
+        colors = new int[paintCount];
+        mixer = new ColorMixer(model);
+        for (int i = 0; i < paintCount; i++)
+        {
+            colors[i] = 0xff000000 | random.nextInt(0x1000000);
+            mixer.add(colors[i]);
+        }
+    }
+
+    /**
+     * Deselects the last paint, or selects it again, and gets the new mix.
+     */
+    @Benchmark
+    public int toggle()
+    {
+        if (toggled)
+            mixer.add(colors[paintCount - 1]);
+        else
+            mixer.remove(colors[paintCount - 1]);
+        toggled = !toggled;
+        return mixer.getMixedColor();
+    }
+
+    /**
+     * The same change with the selection mixed from scratch, as before ColorMixer.
+     */
+    @Benchmark
+    public int remix()
+    {
+        toggled = !toggled;
+        return CMYColor.mix(colors, toggled ? paintCount - 1 : paintCount);
+    }
+}
@@ -0,0 +1,66 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.PaintPath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding touch samples to a path, as happens for every ACTION_MOVE.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PaintPathBenchmark
+{
+    // Samples in the stroke: a quick flick, a typical stroke, and a long scribble.
+    @Param({"16", "256", "4096"})
+    public int sampleCount;
+
+    private float[] samples;
+
+    @Setup
+    public void setUp()
+    {
+        samples = StrokeData.createSamples(sampleCount);
+    }
+
+    /**
+     * Builds a whole stroke from its samples.
+     */
+    @Benchmark
+    public PaintPath addPoints()
+    {
+        PaintPath p = new PaintPath(0xff000000, samples[0], samples[1]);
+        for (int i = 1; i < sampleCount; i++)
+        {
+            p.addPoint(samples[i * 2], samples[i * 2 + 1]);
+        }
+        return p;
+    }
+
+    /**
+     * Builds a whole stroke, then trims it as PaintAreaView does when it's completed.
+     */
+    @Benchmark
+    public PaintPath addPointsAndTrim()
+    {
+        PaintPath p = addPoints();
+        p.trimToSize();
+        return p;
+    }
+}
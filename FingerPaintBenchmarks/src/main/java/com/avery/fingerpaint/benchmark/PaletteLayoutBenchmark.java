@@ -0,0 +1,55 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.PaletteLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Working out where the palette's children go for one frame of its show
+ * animation, which is all PaletteView does per frame besides setting their
+ * translations. Each call moves on to the next of the animation's 30 frames.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PaletteLayoutBenchmark
+{
+    private static final int FRAMES = 30;
+
+    // Custom paints on the palette: none, and the most there can be.
+    @Param({"0", "11"})
+    public int customPaintCount;
+
+    private PaletteLayout layout;
+    private int frame;
+
+    @Setup
+    public void setUp()
+    {
+        layout = new PaletteLayout();
+    }
+
+    @Benchmark
+    public PaletteLayout animationFrame()
+    {
+        frame = (frame + 1) % FRAMES;
+        float fraction = (float) frame / FRAMES;
+        layout.layout(1080, 1920, 180 + 180 * fraction, 108 * (1 - fraction), customPaintCount);
+        return layout;
+    }
+}
@@ -0,0 +1,161 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.PaintPath;
+import com.avery.fingerpaint.PathIndex;
+import com.avery.fingerpaint.StrokeTessellator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the paths that reach a 256 pixel tile of a phone screen, with the
+ * PathIndex and by checking the bounds of every path, and redrawing a dropped
+ * tile, which tessellates each path found. Each call moves on to the next
+ * tile, so every part of the painting is visited.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PathIndexBenchmark
+{
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int TILE_SIZE = 256;
+
+    @Param({"1000", "10000", "100000"})
+    public int pathCount;
+
+    private List<PaintPath> paths;
+    private PathIndex index;
+    private StrokeTessellator tessellator;
+
+    private int columns;
+    private int rows;
+    private int tile;
+    private int[] found;
+
+    @Setup
+    public void setUp()
+    {
+        paths = StrokeData.createPaths(pathCount, 16);
+        index = new PathIndex();
+        for (PaintPath p : paths)
+        {
+            index.add(p);
+        }
+
+        tessellator = new StrokeTessellator();
+        tessellator.setScale(WIDTH, HEIGHT, 10);
+
+        columns = (WIDTH + TILE_SIZE - 1) / TILE_SIZE;
+        rows = (HEIGHT + TILE_SIZE - 1) / TILE_SIZE;
+        found = new int[pathCount];
+    }
+
+    /**
+     * Builds the index from scratch, as when paths are restored.
+     */
+    @Benchmark
+    public PathIndex build()
+    {
+        PathIndex built = new PathIndex();
+        for (int i = 0; i < paths.size(); i++)
+        {
+            built.add(paths.get(i));
+        }
+        return built;
+    }
+
+    @Benchmark
+    public int indexedQuery()
+    {
+        nextTile();
+        return index.query(left(), top(), right(), bottom());
+    }
+
+    @Benchmark
+    public int linearScan()
+    {
+        nextTile();
+        return scan(left(), top(), right(), bottom());
+    }
+
+    @Benchmark
+    public int indexedRedraw()
+    {
+        nextTile();
+        int count = index.query(left(), top(), right(), bottom());
+        return redraw(index.getResults(), count);
+    }
+
+    @Benchmark
+    public int linearScanRedraw()
+    {
+        nextTile();
+        int count = scan(left(), top(), right(), bottom());
+        return redraw(found, count);
+    }
+
+    private int scan(float left, float top, float right, float bottom)
+    {
+        int count = 0;
+        for (int i = 0; i < paths.size(); i++)
+        {
+            PaintPath p = paths.get(i);
+            if (p.getLeft() <= right && p.getRight() >= left && p.getTop() <= bottom && p.getBottom() >= top)
+                found[count++] = i;
+        }
+        return count;
+    }
+
+    private int redraw(int[] indexes, int count)
+    {
+        int indices = 0;
+        for (int i = 0; i < count; i++)
+        {
+            tessellator.tessellate(paths.get(indexes[i]), 0);
+            indices += tessellator.getIndexCount();
+        }
+        return indices;
+    }
+
+    private void nextTile()
+    {
+        tile = (tile + 1) % (columns * rows);
+    }
+
+    private float left()
+    {
+        return (float) (tile % columns * TILE_SIZE) / WIDTH;
+    }
+
+    private float top()
+    {
+        return (float) (tile / columns * TILE_SIZE) / HEIGHT;
+    }
+
+    private float right()
+    {
+        return (float) ((tile % columns + 1) * TILE_SIZE) / WIDTH;
+    }
+
+    private float bottom()
+    {
+        return (float) ((tile / columns + 1) * TILE_SIZE) / HEIGHT;
+    }
+}
@@ -0,0 +1,110 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.PaintPath;
+import com.avery.fingerpaint.StrokeTessellator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the meshes to replay a painting of many short strokes, one per path
+ * as before, or appended into as few as fit, as PaintPathRenderer.batch() does.
+ * Each returns the number of meshes, which is the number of drawVertices calls
+ * for each tile.
+ *
+ * This only measures the tessellation, not the draw calls batching saves; that
+ * can only be measured on a device, where the replay logs how long it took and
+ * how many calls it made.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ReplayBatchBenchmark
+{
+    @Param({"1000", "10000"})
+    public int pathCount;
+
+    // Points in each path: a short dash, and a typical stroke.
+    @Param({"8", "64"})
+    public int pointsPerPath;
+
+    private List<PaintPath> paths;
+    private StrokeTessellator tessellator;
+
+    @Setup
+    public void setUp()
+    {
+        paths = StrokeData.createPaths(pathCount, pointsPerPath);
+        tessellator = new StrokeTessellator();
+        tessellator.setScale(1080, 1920, 10);
+    }
+
+    @Benchmark
+    public int meshPerPath()
+    {
+        int meshes = 0;
+        for (int i = 0; i < paths.size(); i++)
+        {
+            meshes += tessellate(paths.get(i));
+        }
+        return meshes;
+    }
+
+    @Benchmark
+    public int batched()
+    {
+        int meshes = 0;
+        int i = 0;
+        while (i < paths.size())
+        {
+            tessellator.reset();
+            int from = i;
+            while (i < paths.size() && tessellator.append(paths.get(i)))
+            {
+                i++;
+            }
+
+            if (i > from)
+            {
+                meshes++;
+            }
+            else
+            {
+                // Too long to fit in one mesh even on its own, so it's drawn
+                // alone, as batch() leaves it.
+                meshes += tessellate(paths.get(i));
+                i++;
+            }
+        }
+        return meshes;
+    }
+
+    // As PaintPathRenderer.draw() does, returning the number of meshes.
+    private int tessellate(PaintPath p)
+    {
+        int meshes = 0;
+        int next = 0;
+        do
+        {
+            next = tessellator.tessellate(p, next);
+            meshes++;
+        }
+        while (next < p.getPointCount());
+        return meshes;
+    }
+}
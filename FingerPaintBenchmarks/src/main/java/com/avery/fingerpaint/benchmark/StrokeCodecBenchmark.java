@@ -0,0 +1,62 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.PaintPath;
+import com.avery.fingerpaint.StrokeCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and restoring the paths, as PaintAreaView does on every
+ * configuration change.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class StrokeCodecBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int pathCount;
+
+    @Param({"64"})
+    public int pointsPerPath;
+
+    private List<PaintPath> paths;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp()
+    {
+        paths = StrokeData.createPaths(pathCount, pointsPerPath);
+        encoded = StrokeCodec.encode(paths);
+    }
+
+    @Benchmark
+    public byte[] save()
+    {
+        return StrokeCodec.encode(paths);
+    }
+
+    @Benchmark
+    public ArrayList<PaintPath> restore() throws IOException
+    {
+        return StrokeCodec.decode(encoded);
+    }
+}
@@ -0,0 +1,53 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.PaintPath;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates repeatable strokes for the benchmarks. Each is a random walk in
+ * abstract coordinates (x=0..1, y=0..1) with steps about the size of the touch
+ * threshold, like a finger moving across a phone screen.
+ */
+public class StrokeData
+{
+    private static final long SEED = 42;
+    private static final float STEP = 0.01f;
+
+    /**
+     * Returns one stroke of count points, as interleaved x and y coordinates.
+     */
+    public static float[] createSamples(int count)
+    {
+        return createSamples(new Random(SEED), count);
+    }
+
+    public static List<PaintPath> createPaths(int pathCount, int pointsPerPath)
+    {
+        Random random = new Random(SEED);
+        List<PaintPath> paths = new ArrayList<PaintPath>(pathCount);
+        for (int i = 0; i < pathCount; i++)
+        {
+            float[] samples = createSamples(random, pointsPerPath);
+            paths.add(new PaintPath(0xff000000 | random.nextInt(0x1000000), samples, pointsPerPath));
+        }
+        return paths;
+    }
+
+    private static float[] createSamples(Random random, int count)
+    {
+        float[] samples = new float[count * 2];
+        float x = random.nextFloat();
+        float y = random.nextFloat();
+        for (int i = 0; i < count; i++)
+        {
+            x = Math.max(0, Math.min(1, x + (random.nextFloat() - 0.5f) * STEP * 2));
+            y = Math.max(0, Math.min(1, y + (random.nextFloat() - 0.5f) * STEP * 2));
+            samples[i * 2] = x;
+            samples[i * 2 + 1] = y;
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,112 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.PaintPath;
+import com.avery.fingerpaint.StrokeJournalFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing completed paths to the journal, and recovering a journal of
+ * pathCount paths after a crash. Appending a batch includes its fsync, so it
+ * depends on the disk the temporary file is on; the file is started again for
+ * each iteration. Encoding the paths on their own is in StrokeCodecBenchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class StrokeJournalBenchmark
+{
+    // Paths in the journal being recovered.
+    @Param({"1000", "10000"})
+    public int pathCount;
+
+    // Paths appended together, sharing one fsync.
+    @Param({"1", "16"})
+    public int batchSize;
+
+    private List<PaintPath> paths;
+    private File appendFile;
+    private StrokeJournalFile appendJournal;
+    private File recoverFile;
+    private StrokeJournalFile recoverJournal;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        paths = StrokeData.createPaths(pathCount, 64);
+
+        recoverFile = File.createTempFile("recover", ".journal");
+        recoverJournal = new StrokeJournalFile(recoverFile);
+        for (PaintPath p : paths)
+        {
+            recoverJournal.appendPath(p);
+        }
+        recoverJournal.commit();
+    }
+
+    @Setup(Level.Iteration)
+    public void openAppendJournal() throws IOException
+    {
+        appendFile = File.createTempFile("append", ".journal");
+        appendJournal = new StrokeJournalFile(appendFile);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeAppendJournal() throws IOException
+    {
+        appendJournal.close();
+        appendFile.delete();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        recoverJournal.close();
+        recoverFile.delete();
+    }
+
+    /**
+     * Appends batchSize paths and commits them, as the journal thread does with
+     * the paths completed while it was writing the last batch.
+     */
+    @Benchmark
+    public int appendBatch() throws IOException
+    {
+        int written = 0;
+        for (int i = 0; i < batchSize; i++)
+        {
+            written += appendJournal.appendPath(paths.get(next));
+            next = (next + 1) % paths.size();
+        }
+        appendJournal.commit();
+        return written;
+    }
+
+    @Benchmark
+    public ArrayList<PaintPath> recover() throws IOException
+    {
+        return recoverJournal.read();
+    }
+}
@@ -0,0 +1,62 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.PaintPath;
+import com.avery.fingerpaint.StrokeRasterizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering a painting at phone screen size without Android, on one thread
+ * and on every core.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class StrokeRasterizerBenchmark
+{
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    @Param({"100", "1000"})
+    public int pathCount;
+
+    @Param({"1", "0"}) // 0 uses every core
+    public int threads;
+
+    private List<PaintPath> paths;
+    private StrokeRasterizer rasterizer;
+    private int[] pixels;
+
+    @Setup
+    public void setUp()
+    {
+        paths = StrokeData.createPaths(pathCount, 64);
+        rasterizer = new StrokeRasterizer(WIDTH, HEIGHT, 10);
+        if (threads > 0)
+            rasterizer.setThreadCount(threads);
+        pixels = new int[WIDTH * HEIGHT];
+    }
+
+    @Benchmark
+    public int[] render()
+    {
+        rasterizer.render(paths, pixels);
+        return pixels;
+    }
+}
@@ -0,0 +1,79 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.PaintPath;
+import com.avery.fingerpaint.StrokeTessellator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the triangle mesh for a tapering stroke, as happens for each path
+ * drawn onto the tiles. Run with -prof gc to check it doesn't allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class StrokeTessellatorBenchmark
+{
+    // Points in the stroke: a quick flick, a typical stroke, and a long scribble.
+    @Param({"16", "256", "4096"})
+    public int pointCount;
+
+    private PaintPath path;
+    private StrokeTessellator tessellator;
+
+    @Setup
+    public void setUp()
+    {
+        float[] samples = StrokeData.createSamples(pointCount);
+        path = new PaintPath(0xff000000, samples[0], samples[1], 1);
+        for (int i = 1; i < pointCount; i++)
+        {
+            // Swell and thin along the stroke, as pressure and speed change.
+            float width = 1 + 0.5f * (float) Math.sin(i * 0.1);
+            path.addPoint(samples[i * 2], samples[i * 2 + 1], width);
+        }
+
+        tessellator = new StrokeTessellator();
+        tessellator.setScale(1080, 1920, 10);
+    }
+
+    /**
+     * Tessellates the whole stroke, as when it's completed or replayed.
+     */
+    @Benchmark
+    public int tessellate()
+    {
+        int next = 0;
+        do
+        {
+            next = tessellator.tessellate(path, next);
+        }
+        while (next < path.getPointCount());
+        return tessellator.getIndexCount();
+    }
+
+    /**
+     * Tessellates just the segment added by the last point, as while drawing.
+     */
+    @Benchmark
+    public int tessellateLastSegment()
+    {
+        tessellator.tessellate(path, pointCount - 1);
+        return tessellator.getIndexCount();
+    }
+}
@@ -0,0 +1,201 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.PaletteLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What SwatchCache saves and costs on a software canvas, with Java2D's
+ * anti-aliased software renderer standing in for Android's, at the sizes
+ * PaletteLayout gives a 1080x1920 screen with every custom paint:
+ *
+ *   animationFrame - every swatch drawn for one frame of the palette
+ *                    animation, which only moves them, with their circles or
+ *                    from the cache, with the primaries' indicators live.
+ *   sliderFrame    - the swatches a frame of dragging a primary's slider
+ *                    redraws: that primary, the selector and the current
+ *                    paint. Caching every look, with the indicator as part
+ *                    of the primary's, allocates a bitmap for all three; now
+ *                    the two whose color changes are drawn directly and only
+ *                    the primary's circles come from the cache.
+ *
+ * The cache's own lookup isn't included; it needs Android's Bitmap and Canvas.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SwatchCacheBenchmark
+{
+    private static final int CUSTOM_PAINT_COUNT = 11;
+    private static final int SWATCH_COUNT = PaletteLayout.FIRST_CUSTOM_PAINT + CUSTOM_PAINT_COUNT;
+
+    private int[] sizes;
+    private int[] colors;
+    private BufferedImage[] cached;
+    private BufferedImage frame;
+    private Graphics2D g;
+    private Ellipse2D.Float circle;
+    private Arc2D.Float arc;
+    private BasicStroke indicatorStroke;
+    private int step;
+
+    @Setup
+    public void setUp()
+    {
+        PaletteLayout layout = new PaletteLayout();
+        layout.layout(1080, 1920, 0, 0, CUSTOM_PAINT_COUNT);
+
+        sizes = new int[SWATCH_COUNT];
+        colors = new int[SWATCH_COUNT];
+        for (int i = 0; i < SWATCH_COUNT; i++)
+        {
+            sizes[i] = Math.round(layout.getRight(i) - layout.getLeft(i));
+            colors[i] = 0xff000000 | (i * 0x3a5f17);
+        }
+
+        frame = new BufferedImage(1080, 1080, BufferedImage.TYPE_INT_ARGB_PRE);
+        g = createGraphics(frame);
+        circle = new Ellipse2D.Float();
+        arc = new Arc2D.Float(Arc2D.OPEN);
+        indicatorStroke = new BasicStroke(6);
+        step = 240;
+
+        cached = new BufferedImage[SWATCH_COUNT];
+        for (int i = 0; i < SWATCH_COUNT; i++)
+        {
+            cached[i] = drawSwatch(i, colors[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage animationFrameDrawn()
+    {
+        for (int i = 0; i < SWATCH_COUNT; i++)
+        {
+            drawCircles(g, sizes[i], colors[i]);
+            drawIndicator(g, i);
+        }
+        return frame;
+    }
+
+    @Benchmark
+    public BufferedImage animationFrameCached()
+    {
+        for (int i = 0; i < SWATCH_COUNT; i++)
+        {
+            g.drawImage(cached[i], 0, 0, null);
+            drawIndicator(g, i);
+        }
+        return frame;
+    }
+
+    @Benchmark
+    public BufferedImage sliderFrameCachingEveryLook()
+    {
+        int color = nextColor();
+        g.drawImage(drawSwatch(PaletteLayout.SELECTOR, color), 0, 0, null);
+        g.drawImage(drawSwatch(PaletteLayout.FIRST_CUSTOM_PAINT, color), 0, 0, null);
+        BufferedImage primary = drawSwatch(PaletteLayout.CYAN, colors[PaletteLayout.CYAN]);
+        Graphics2D c = createGraphics(primary);
+        drawIndicator(c, PaletteLayout.CYAN);
+        c.dispose();
+        g.drawImage(primary, 0, 0, null);
+        return frame;
+    }
+
+    @Benchmark
+    public BufferedImage sliderFrame()
+    {
+        int color = nextColor();
+        drawCircles(g, sizes[PaletteLayout.SELECTOR], color);
+        drawCircles(g, sizes[PaletteLayout.FIRST_CUSTOM_PAINT], color);
+        g.drawImage(cached[PaletteLayout.CYAN], 0, 0, null);
+        drawIndicator(g, PaletteLayout.CYAN);
+        return frame;
+    }
+
+    private int nextColor()
+    {
+        step++;
+        return 0xff000000 | (step * 0x010203);
+    }
+
+    // As a miss: a new bitmap the size of the swatch, with its circles.
+    private BufferedImage drawSwatch(int swatch, int color)
+    {
+        BufferedImage image = new BufferedImage(sizes[swatch], sizes[swatch], BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D c = createGraphics(image);
+        drawCircles(c, sizes[swatch], color);
+        c.dispose();
+        return image;
+    }
+
+    // The outline, the ring inside it and the fill, as the swatches draw them.
+    private void drawCircles(Graphics2D c, int size, int color)
+    {
+        float padding = size / 10f;
+        float radius = size / 2f - padding;
+        float center = radius + padding;
+
+        fillCircle(c, center, radius + 8, Color.LIGHT_GRAY);
+        fillCircle(c, center, radius + 6, Color.WHITE);
+        fillCircle(c, center, radius, new Color(color));
+    }
+
+    private void fillCircle(Graphics2D c, float center, float radius, Color color)
+    {
+        circle.setFrame(center - radius, center - radius, 2 * radius, 2 * radius);
+        c.setColor(color);
+        c.fill(circle);
+    }
+
+    private void drawIndicator(Graphics2D c, int swatch)
+    {
+        if (swatch != PaletteLayout.CYAN && swatch != PaletteLayout.MAGENTA && swatch != PaletteLayout.YELLOW)
+            return;
+
+        int size = sizes[swatch];
+        float padding = size / 10f;
+        float radius = size / 2f - padding + 3;
+        float center = size / 2f;
+        arc.setArc(center - radius, center - radius, 2 * radius, 2 * radius, -90, -(step % 360), Arc2D.OPEN);
+        c.setColor(Color.GREEN);
+        c.setStroke(indicatorStroke);
+        c.draw(arc);
+    }
+
+    private static Graphics2D createGraphics(BufferedImage image)
+    {
+        Graphics2D c = image.createGraphics();
+        c.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        return c;
+    }
+}
@@ -0,0 +1,79 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.StrokeBuilder;
+import com.avery.fingerpaint.StrokeDispatcher;
+import com.avery.fingerpaint.TouchSampleQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Touch events per second through InkSurfaceView's input path, without the
+ * drawing: each operation queues one event's samples, as the UI thread does,
+ * and builds the strokes from them, as the render thread does. The events come
+ * from a TouchGesture, played over and over, with a finger per pointer
+ * touching down, moving with two samples of history per event, and lifting.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TouchDispatchBenchmark
+{
+    @Param({"1", "10"})
+    public int pointers;
+
+    private TouchGesture gesture;
+    private TouchSampleQueue queue;
+    private StrokeDispatcher<StrokeBuilder> dispatcher;
+    private int event;
+
+    // Points in the finished paths, so their building can't be left out.
+    private long finishedPoints;
+
+    @Setup
+    public void setUp()
+    {
+        gesture = new TouchGesture(1080, 1920, pointers, 120, 2);
+        queue = new TouchSampleQueue(4096);
+        dispatcher = new StrokeDispatcher<StrokeBuilder>()
+        {
+            @Override
+            protected StrokeBuilder createStroke(int pointerId, int color, float x, float y, float pressure,
+                    long time, int width, int height)
+            {
+                return new StrokeBuilder(pointerId, color, x, y, pressure, time, width, height);
+            }
+
+            @Override
+            protected void onStrokeFinished(StrokeBuilder stroke)
+            {
+                finishedPoints += stroke.getPath().getPointCount();
+            }
+        };
+        dispatcher.setSize(1080, 1920);
+        event = 0;
+    }
+
+    @Benchmark
+    public long dispatchEvent()
+    {
+        gesture.offer(queue, event);
+        long time = dispatcher.takeSamples(queue);
+        event = event + 1 < gesture.getEventCount() ? event + 1 : 0;
+        return time + finishedPoints;
+    }
+}
@@ -0,0 +1,246 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.TouchSampleQueue;
+
+import java.util.Random;
+
+/**
+ * A repeatable gesture of several fingers at once, as the touch events
+ * InkSurfaceView would queue for it. Each finger touches down in turn and
+ * draws a random walk in a lane of its own, a column of the view, so every
+ * point of a path shows which finger drew it. They then lift in a shuffled
+ * order. Each move event carries every finger down, with history samples
+ * before the current ones, oldest first.
+ */
+public class TouchGesture
+{
+    private static final float STEP = 12;
+    private static final int EVENT_INTERVAL = 8;
+
+    private int width;
+    private int height;
+    private int pointerCount;
+    private int[] liftOrder;
+
+    // The samples of every event, with eventStarts[e] the first of event e.
+    private int sampleCount;
+    private int[] actions;
+    private int[] pointerIds;
+    private int[] colors;
+    private float[] xs;
+    private float[] ys;
+    private float[] pressures;
+    private long[] times;
+    private int eventCount;
+    private int[] eventStarts;
+
+    // Where each finger is, and whether it's down, as the events are built.
+    private float[] fingerX;
+    private float[] fingerY;
+    private boolean[] down;
+    private long time;
+
+    /**
+     * Creates a gesture of pointerCount fingers on a width by height view,
+     * with moveCount move events while they're all down, each carrying
+     * historySize samples of history.
+     */
+    public TouchGesture(int width, int height, int pointerCount, int moveCount, int historySize)
+    {
+        this.width = width;
+        this.height = height;
+        this.pointerCount = pointerCount;
+        actions = new int[64];
+        pointerIds = new int[64];
+        colors = new int[64];
+        xs = new float[64];
+        ys = new float[64];
+        pressures = new float[64];
+        times = new long[64];
+        eventStarts = new int[16];
+        fingerX = new float[pointerCount];
+        fingerY = new float[pointerCount];
+        down = new boolean[pointerCount];
+
+        Random random = new Random(42);
+        liftOrder = new int[pointerCount];
+        for (int i = 0; i < pointerCount; i++)
+        {
+            liftOrder[i] = i;
+        }
+        for (int i = pointerCount - 1; i > 0; i--)
+        {
+            int j = random.nextInt(i + 1);
+            int t = liftOrder[i];
+            liftOrder[i] = liftOrder[j];
+            liftOrder[j] = t;
+        }
+
+        for (int p = 0; p < pointerCount; p++)
+        {
+            fingerX[p] = (p + 0.5f) * width / pointerCount;
+            fingerY[p] = height * (0.2f + 0.6f * random.nextFloat());
+            startEvent();
+            // A new gesture also finishes any strokes left from the last one.
+            if (p == 0)
+                addSample(TouchSampleQueue.CANCEL, -1, 0, 0, time);
+            addSample(TouchSampleQueue.DOWN, p, fingerX[p], fingerY[p], time);
+            down[p] = true;
+            addMove(random, historySize);
+        }
+        for (int i = 0; i < moveCount; i++)
+        {
+            addMove(random, historySize);
+        }
+        for (int i = 0; i < pointerCount; i++)
+        {
+            int p = liftOrder[i];
+            startEvent();
+            addSample(TouchSampleQueue.UP, p, fingerX[p], fingerY[p], time);
+            down[p] = false;
+            if (i < pointerCount - 1)
+                addMove(random, historySize);
+        }
+    }
+
+    public int getPointerCount()
+    {
+        return pointerCount;
+    }
+
+    /**
+     * The pointer IDs, 0 to getPointerCount() - 1, in the order the fingers lift.
+     */
+    public int[] getLiftOrder()
+    {
+        return liftOrder;
+    }
+
+    /**
+     * The color of the stroke drawn by a pointer.
+     */
+    public static int getColor(int pointerId)
+    {
+        return 0xff000000 | (pointerId * 0x1f3d5b + 0x102030);
+    }
+
+    /**
+     * The column of the view, in abstract coordinates (x=0..1), a pointer
+     * draws in: from getLaneLeft(pointerId) to getLaneLeft(pointerId + 1).
+     */
+    public float getLaneLeft(int pointerId)
+    {
+        return (float) pointerId / pointerCount;
+    }
+
+    public int getEventCount()
+    {
+        return eventCount;
+    }
+
+    public int getSampleCount()
+    {
+        return sampleCount;
+    }
+
+    public int getSampleCount(int event)
+    {
+        int end = event + 1 < eventCount ? eventStarts[event + 1] : sampleCount;
+        return end - eventStarts[event];
+    }
+
+    /**
+     * Adds every sample of the event to the queue, returning false (and adding
+     * none) if there isn't room for them all, as InkSurfaceView does.
+     */
+    public boolean offer(TouchSampleQueue queue, int event)
+    {
+        int start = eventStarts[event];
+        int count = getSampleCount(event);
+        if (queue.remainingCapacity() < count)
+            return false;
+
+        for (int i = start; i < start + count; i++)
+        {
+            queue.offer(actions[i], pointerIds[i], colors[i], xs[i], ys[i], pressures[i], times[i]);
+        }
+        return true;
+    }
+
+    private void startEvent()
+    {
+        if (eventCount == eventStarts.length)
+            eventStarts = grow(eventStarts);
+        eventStarts[eventCount++] = sampleCount;
+        time += EVENT_INTERVAL;
+    }
+
+    // A move event, with history, of every finger that's down.
+    private void addMove(Random random, int historySize)
+    {
+        startEvent();
+        for (int h = historySize; h >= 0; h--)
+        {
+            long sampleTime = time - h * EVENT_INTERVAL / (historySize + 1);
+            for (int p = 0; p < pointerCount; p++)
+            {
+                if (!down[p])
+                    continue;
+
+                float laneLeft = (float) p * width / pointerCount;
+                float laneRight = (float) (p + 1) * width / pointerCount;
+                fingerX[p] = clamp(fingerX[p] + (random.nextFloat() - 0.5f) * STEP, laneLeft + 1, laneRight - 1);
+                fingerY[p] = clamp(fingerY[p] + (random.nextFloat() - 0.5f) * STEP * 2, 0, height - 1);
+                addSample(TouchSampleQueue.MOVE, p, fingerX[p], fingerY[p], sampleTime);
+            }
+        }
+    }
+
+    private void addSample(int action, int pointerId, float x, float y, long sampleTime)
+    {
+        if (sampleCount == actions.length)
+        {
+            actions = grow(actions);
+            pointerIds = grow(pointerIds);
+            colors = grow(colors);
+            xs = grow(xs);
+            ys = grow(ys);
+            pressures = grow(pressures);
+            times = grow(times);
+        }
+        actions[sampleCount] = action;
+        pointerIds[sampleCount] = pointerId;
+        colors[sampleCount] = action == TouchSampleQueue.DOWN ? getColor(pointerId) : 0;
+        xs[sampleCount] = x;
+        ys[sampleCount] = y;
+        pressures[sampleCount] = 1;
+        times[sampleCount] = sampleTime;
+        sampleCount++;
+    }
+
+    private static float clamp(float value, float min, float max)
+    {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static int[] grow(int[] a)
+    {
+        int[] b = new int[a.length * 2];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+
+    private static float[] grow(float[] a)
+    {
+        float[] b = new float[a.length * 2];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+
+    private static long[] grow(long[] a)
+    {
+        long[] b = new long[a.length * 2];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+}
@@ -0,0 +1,83 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.TouchSampleQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passing touch samples from the UI thread to InkSurfaceView's render thread,
+ * with one thread adding as fast as it can and another taking. It doubles as a
+ * stress test: each sample carries its sequence number, and taking one out of
+ * order, or after a gap, fails the run.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Group)
+public class TouchSampleQueueBenchmark
+{
+    // A tiny queue that's nearly always full or empty, so the two threads
+    // constantly meet at the ends, and the size InkSurfaceView uses.
+    @Param({"16", "4096"})
+    public int capacity;
+
+    private TouchSampleQueue queue;
+
+    // Each only used by one of the threads.
+    private long produced;
+    private long consumed;
+
+    @Setup
+    public void setUp()
+    {
+        queue = new TouchSampleQueue(capacity);
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(1)
+    public boolean offer()
+    {
+        // The sequence number goes in every field that can hold it exactly.
+        long n = produced;
+        if (!queue.offer(TouchSampleQueue.MOVE, (int) n, (int) (n >>> 32), n & 0xffff, n >>> 16 & 0xffff, 1, n))
+            return false;
+        produced = n + 1;
+        return true;
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(1)
+    public boolean poll()
+    {
+        if (!queue.poll())
+            return false;
+
+        long n = consumed;
+        if (queue.getTime() != n || queue.getPointerId() != (int) n || queue.getColor() != (int) (n >>> 32)
+                || queue.getX() != (n & 0xffff) || queue.getY() != (n >>> 16 & 0xffff)
+                || queue.getAction() != TouchSampleQueue.MOVE)
+        {
+            throw new IllegalStateException("Expected sample " + n + " but took " + queue.getTime());
+        }
+        consumed = n + 1;
+        return true;
+    }
+}
@@ -0,0 +1,81 @@
+package com.avery.fingerpaint.benchmark;
+
+import com.avery.fingerpaint.PaintPath;
+import com.avery.fingerpaint.StrokeRasterizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Undoing the last of pathCount paths, the way PaintAreaView does it: copying
+ * back the newest checkpoint taken before that path and drawing the paths
+ * since, compared to drawing every remaining path again. StrokeRasterizer
+ * stands in for the tiles, on one thread, so the two differ only in how many
+ * paths are drawn and the cost of copying the checkpoint.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class UndoBenchmark
+{
+    private static final int WIDTH = 540;
+    private static final int HEIGHT = 960;
+
+    @Param({"10000"})
+    public int pathCount;
+
+    // PaintAreaView's default.
+    @Param({"20"})
+    public int checkpointInterval;
+
+    private List<PaintPath> remaining;
+    private List<PaintPath> sinceCheckpoint;
+    private StrokeRasterizer rasterizer;
+    private int[] checkpoint;
+    private int[] pixels;
+
+    @Setup
+    public void setUp()
+    {
+        List<PaintPath> paths = StrokeData.createPaths(pathCount, 32);
+        remaining = paths.subList(0, pathCount - 1);
+        int checkpointCount = (pathCount - 1) / checkpointInterval * checkpointInterval;
+        sinceCheckpoint = paths.subList(checkpointCount, pathCount - 1);
+
+        rasterizer = new StrokeRasterizer(WIDTH, HEIGHT, 5);
+        rasterizer.setThreadCount(1);
+        checkpoint = new int[WIDTH * HEIGHT];
+        rasterizer.render(paths.subList(0, checkpointCount), checkpoint);
+        pixels = new int[WIDTH * HEIGHT];
+    }
+
+    @Benchmark
+    public int[] fullReplay()
+    {
+        rasterizer.render(remaining, pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public int[] checkpointReplay()
+    {
+        System.arraycopy(checkpoint, 0, pixels, 0, pixels.length);
+        rasterizer.drawOver(sinceCheckpoint, pixels);
+        return pixels;
+    }
+}
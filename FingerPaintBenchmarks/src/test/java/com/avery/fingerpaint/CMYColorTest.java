@@ -0,0 +1,59 @@
+package com.avery.fingerpaint;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class CMYColorTest
+{
+    @Test
+    public void roundTripsEveryChannelValue()
+    {
+        CMYColor cmy = new CMYColor();
+        for (int v = 0; v < 256; v++)
+        {
+            int color = 0xff000000 | (v << 16) | ((255 - v) << 8) | (v / 2);
+            cmy.setRGB(color);
+            assertEquals(color, cmy.getRGB());
+            assertEquals(color, CMYColor.fromRGB(color).getRGB());
+        }
+    }
+
+    @Test
+    public void floatAndPackedConversionsAgree()
+    {
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++)
+        {
+            int c = random.nextInt(256);
+            int m = random.nextInt(256);
+            int y = random.nextInt(256);
+            assertEquals(CMYColor.cmyToRGB(CMYColor.packCMY(c, m, y)),
+                    CMYColor.toRGB(c / 255f, m / 255f, y / 255f));
+        }
+    }
+
+    @Test
+    public void toRGBClampsOutOfRangeChannels()
+    {
+        assertEquals(0xff000000, CMYColor.toRGB(1.5f, 2, 1));
+        assertEquals(0xffffffff, CMYColor.toRGB(-0.5f, 0, -1));
+    }
+
+    @Test
+    public void mixesSubtractively()
+    {
+        int cyan = 0xff00ffff;
+        int yellow = 0xffffff00;
+        int magenta = 0xffff00ff;
+        assertEquals(0xff00ff00, CMYColor.mix(new int[] { cyan, yellow }, 2));
+        assertEquals(0xff000000, CMYColor.mix(new int[] { cyan, yellow, magenta }, 3));
+
+        // Only the first count colors are mixed, and channels saturate.
+        assertEquals(cyan, CMYColor.mix(new int[] { cyan, yellow }, 1));
+        assertEquals(0xff01ffff, CMYColor.mix(new int[] { 0xff80ffff, 0xff80ffff }, 2));
+        assertEquals(cyan, CMYColor.mix(new int[] { cyan, 0xff80ffff }, 2));
+    }
+}
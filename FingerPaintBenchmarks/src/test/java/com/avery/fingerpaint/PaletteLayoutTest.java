@@ -0,0 +1,94 @@
+package com.avery.fingerpaint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PaletteLayoutTest
+{
+    private static final float WIDTH = 1080;
+    private static final float HEIGHT = 1920;
+
+    @Test
+    public void placesChildrenAroundTheBottomEdge()
+    {
+        PaletteLayout layout = new PaletteLayout();
+        layout.layout(WIDTH, HEIGHT, 0, 0, 0);
+
+        // The wheel's radius is a quarter of the short side, centered half of
+        // that above the bottom.
+        assertBounds(layout, PaletteLayout.SELECTOR, 405, 1650, 675, 1920);
+        assertBounds(layout, PaletteLayout.MIX_BUTTON, 675, 1731, 783, 1839);
+        float d = (float) (270 * Math.sqrt(0.5));
+        assertBounds(layout, PaletteLayout.YELLOW, 540 + d - 90, 1785 - d - 90, 540 + d + 90, 1785 - d + 90);
+        assertBounds(layout, PaletteLayout.CYAN, 540 - d - 90, 1785 - d - 90, 540 - d + 90, 1785 - d + 90);
+        assertEquals(108, layout.getHiddenOffset(), 0.001f);
+    }
+
+    @Test
+    public void fullTurnEndsWhereItStarted()
+    {
+        // Showing the palette turns it from 180 to 360 degrees.
+        PaletteLayout start = new PaletteLayout();
+        start.layout(WIDTH, HEIGHT, 0, 0, 11);
+        PaletteLayout end = new PaletteLayout();
+        end.layout(WIDTH, HEIGHT, 360, 0, 11);
+
+        for (int child = 0; child < PaletteLayout.FIRST_CUSTOM_PAINT + 11; child++)
+        {
+            assertBounds(end, child, start.getLeft(child), start.getTop(child),
+                    start.getRight(child), start.getBottom(child));
+        }
+    }
+
+    @Test
+    public void offsetMovesEverythingDown()
+    {
+        PaletteLayout shown = new PaletteLayout();
+        shown.layout(WIDTH, HEIGHT, 90, 0, 5);
+        PaletteLayout hidden = new PaletteLayout();
+        hidden.layout(WIDTH, HEIGHT, 90, shown.getHiddenOffset(), 5);
+
+        for (int child = 0; child < PaletteLayout.FIRST_CUSTOM_PAINT + 5; child++)
+        {
+            assertEquals(shown.getLeft(child), hidden.getLeft(child), 0.001f);
+            assertEquals(shown.getTop(child) + shown.getHiddenOffset(), hidden.getTop(child), 0.001f);
+        }
+    }
+
+    @Test
+    public void animationFramesMoveSmoothly()
+    {
+        // At 60 fps, the 500 ms animation takes 30 frames; no child should
+        // jump further than the primaries' wheel turns in one.
+        PaletteLayout previous = new PaletteLayout();
+        PaletteLayout current = new PaletteLayout();
+        previous.layout(WIDTH, HEIGHT, 180, 108, 11);
+        float maxStep = (float) (2 * Math.PI * (270 + 120) * 6 / 360) + 108 / 30f + 0.01f;
+
+        for (int frame = 1; frame <= 30; frame++)
+        {
+            float fraction = frame / 30f;
+            current.layout(WIDTH, HEIGHT, 180 + 180 * fraction, 108 * (1 - fraction), 11);
+            for (int child = 0; child < PaletteLayout.FIRST_CUSTOM_PAINT + 11; child++)
+            {
+                float step = (float) Math.hypot(current.getLeft(child) - previous.getLeft(child),
+                        current.getTop(child) - previous.getTop(child));
+                assertTrue("frame " + frame + " child " + child + " moved " + step, step <= maxStep);
+            }
+
+            PaletteLayout swap = previous;
+            previous = current;
+            current = swap;
+        }
+    }
+
+    private static void assertBounds(PaletteLayout layout, int child, float left, float top, float right, float bottom)
+    {
+        assertEquals(left, layout.getLeft(child), 0.01f);
+        assertEquals(top, layout.getTop(child), 0.01f);
+        assertEquals(right, layout.getRight(child), 0.01f);
+        assertEquals(bottom, layout.getBottom(child), 0.01f);
+    }
+}
@@ -0,0 +1,101 @@
+package com.avery.fingerpaint;
+
+import com.avery.fingerpaint.benchmark.StrokeData;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PathIndexTest
+{
+    @Test
+    public void findsTheSamePathsAsAScan()
+    {
+        List<PaintPath> paths = StrokeData.createPaths(2000, 16);
+        PathIndex index = new PathIndex();
+        for (PaintPath p : paths)
+        {
+            index.add(p);
+        }
+
+        Random random = new Random(1);
+        for (int n = 0; n < 500; n++)
+        {
+            float left = random.nextFloat() * 1.2f - 0.1f;
+            float top = random.nextFloat() * 1.2f - 0.1f;
+            float right = left + random.nextFloat() * 0.3f;
+            float bottom = top + random.nextFloat() * 0.3f;
+            assertQuery(paths, paths.size(), index, left, top, right, bottom);
+        }
+    }
+
+    @Test
+    public void forgetsRemovedPaths()
+    {
+        List<PaintPath> paths = StrokeData.createPaths(300, 16);
+        PathIndex index = new PathIndex(8);
+        for (PaintPath p : paths)
+        {
+            index.add(p);
+        }
+
+        // As undo does.
+        for (int i = 0; i < 100; i++)
+        {
+            index.removeLast();
+        }
+        assertEquals(200, index.size());
+        assertQuery(paths, 200, index, 0, 0, 1, 1);
+        assertQuery(paths, 200, index, 0.25f, 0.25f, 0.5f, 0.5f);
+
+        // And redo.
+        for (int i = 200; i < 250; i++)
+        {
+            index.add(paths.get(i));
+        }
+        assertQuery(paths, 250, index, 0, 0, 1, 1);
+    }
+
+    @Test
+    public void findsPathsOutsideTheGrid()
+    {
+        PathIndex index = new PathIndex(4);
+        PaintPath p = new PaintPath(0xff000000, -0.5f, 1.2f);
+        p.addPoint(-0.4f, 1.3f);
+        index.add(p);
+
+        assertEquals(1, index.query(-1, 1, 0, 2));
+        assertEquals(0, index.query(0.1f, 0.1f, 0.9f, 0.9f));
+    }
+
+    @Test
+    public void emptiesOnClear()
+    {
+        PathIndex index = new PathIndex();
+        index.add(new PaintPath(0xff000000, 0.5f, 0.5f));
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(0, index.query(0, 0, 1, 1));
+    }
+
+    private static void assertQuery(List<PaintPath> paths, int size, PathIndex index,
+                                    float left, float top, float right, float bottom)
+    {
+        int[] expected = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++)
+        {
+            PaintPath p = paths.get(i);
+            if (p.getLeft() <= right && p.getRight() >= left && p.getTop() <= bottom && p.getBottom() >= top)
+                expected[count++] = i;
+        }
+
+        int found = index.query(left, top, right, bottom);
+        assertArrayEquals(Arrays.copyOf(expected, count), Arrays.copyOf(index.getResults(), found));
+    }
+}
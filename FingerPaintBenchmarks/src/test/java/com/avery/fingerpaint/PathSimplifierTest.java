@@ -0,0 +1,132 @@
+package com.avery.fingerpaint;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PathSimplifierTest
+{
+    private static final float SCALE = 1000;
+
+    @Test
+    public void removesPointsOnAStraightLine()
+    {
+        PaintPath p = new PaintPath(0xff000000, 0.1f, 0.1f);
+        for (int i = 1; i < 50; i++)
+        {
+            p.addPoint(0.1f + i * 0.01f, 0.1f + i * 0.005f);
+        }
+
+        PathSimplifier.Result result = PathSimplifier.simplify(p, 1, SCALE, SCALE);
+
+        // The first, second to last and last points are always kept.
+        assertEquals(3, result.path.getPointCount());
+        assertEquals(47, result.removedPoints);
+        assertEquals(p.getX(48), result.path.getX(1), 0);
+        assertEquals(0, result.maxError, 0.01f);
+    }
+
+    @Test
+    public void leavesShortPathsAlone()
+    {
+        PaintPath p = new PaintPath(0xff000000, 0.1f, 0.1f);
+        p.addPoint(0.2f, 0.1f);
+        p.addPoint(0.3f, 0.1f);
+
+        PathSimplifier.Result result = PathSimplifier.simplify(p, 1, SCALE, SCALE);
+        assertSame(p, result.path);
+        assertEquals(0, result.removedPoints);
+    }
+
+    @Test
+    public void keepsWidthsOfKeptPoints()
+    {
+        PaintPath p = new PaintPath(0xff000000, 0.1f, 0.1f, 1);
+        for (int i = 1; i < 10; i++)
+        {
+            p.addPoint(0.1f + i * 0.01f, 0.1f, 1 + i * 0.1f);
+        }
+
+        PaintPath simplified = PathSimplifier.simplify(p, 1, SCALE, SCALE).path;
+        assertEquals(3, simplified.getPointCount());
+        assertEquals(p.getWidth(8), simplified.getWidth(1), 0.0001f);
+        assertEquals(p.getWidth(9), simplified.getWidth(2), 0.0001f);
+    }
+
+    @Test
+    public void maxErrorIsTheDistanceBetweenTheDrawnCurves()
+    {
+        Random random = new Random(42);
+        for (int n = 0; n < 20; n++)
+        {
+            // A wobbly stroke, with wobbles around the tolerance.
+            PaintPath p = new PaintPath(0xff000000, 0.5f, 0.5f);
+            float x = 0.5f;
+            float y = 0.5f;
+            for (int i = 1; i < 100; i++)
+            {
+                x += 0.003f;
+                y += (random.nextFloat() - 0.5f) * 0.004f;
+                p.addPoint(x, y);
+            }
+
+            PathSimplifier.Result result = PathSimplifier.simplify(p, 1, SCALE, SCALE);
+            float actual = curveDistance(p, result.path);
+
+            // It may overestimate, but not by much, and mustn't underestimate
+            // by more than the flattening error.
+            assertTrue(result.maxError + " < " + actual, result.maxError >= actual - 0.05f);
+            assertTrue(result.maxError + " > " + actual, result.maxError <= actual * 1.5f + 0.05f);
+        }
+    }
+
+    // The largest distance from the curve drawn for a to the curve drawn for b,
+    // finely sampled and compared against the whole of b.
+    private static float curveDistance(PaintPath a, PaintPath b)
+    {
+        float[] bx = new float[(b.getPointCount() - 1) * 64 + 1];
+        float[] by = new float[bx.length];
+        int count = 0;
+        for (int i = 1; i < b.getPointCount(); i++)
+        {
+            for (int s = i == 1 ? 0 : 1; s <= 64; s++)
+            {
+                float[] point = curvePoint(b, i, s / 64f);
+                bx[count] = point[0];
+                by[count++] = point[1];
+            }
+        }
+
+        float max = 0;
+        for (int i = 1; i < a.getPointCount(); i++)
+        {
+            for (int s = 0; s <= 16; s++)
+            {
+                float[] point = curvePoint(a, i, s / 16f);
+                float nearest = Float.MAX_VALUE;
+                for (int k = 0; k < count; k++)
+                {
+                    nearest = Math.min(nearest, (float) Math.hypot(point[0] - bx[k], point[1] - by[k]));
+                }
+                max = Math.max(max, nearest);
+            }
+        }
+        return max;
+    }
+
+    private static float[] curvePoint(PaintPath p, int i, float t)
+    {
+        float cx = p.getX(i - 1) * SCALE;
+        float cy = p.getY(i - 1) * SCALE;
+        float x0 = i == 1 ? cx : (p.getX(i - 2) * SCALE + cx) / 2;
+        float y0 = i == 1 ? cy : (p.getY(i - 2) * SCALE + cy) / 2;
+        float x1 = (cx + p.getX(i) * SCALE) / 2;
+        float y1 = (cy + p.getY(i) * SCALE) / 2;
+        float u = 1 - t;
+        return new float[] { u * u * x0 + 2 * u * t * cx + t * t * x1, u * u * y0 + 2 * u * t * cy + t * t * y1 };
+    }
+}
@@ -0,0 +1,145 @@
+package com.avery.fingerpaint;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class StrokeCodecTest
+{
+    @Test
+    public void roundTripsPathsWithAndWithoutWidths() throws IOException
+    {
+        List<PaintPath> paths = new ArrayList<PaintPath>();
+
+        PaintPath plain = new PaintPath(0xff102030, 0.1f, 0.2f);
+        plain.addPoint(0.3f, 0.4f);
+        plain.addPoint(0.5f, 0.6f);
+        paths.add(plain);
+
+        PaintPath tapered = new PaintPath(0xffa0b0c0, 0.9f, 0.8f, 1.5f);
+        tapered.addPoint(0.7f, 0.6f, 0.5f);
+        paths.add(tapered);
+
+        paths.add(new PaintPath(0xff000000, 0.5f, 0.5f));
+
+        List<PaintPath> decoded = StrokeCodec.decode(StrokeCodec.encode(paths));
+
+        assertEquals(paths.size(), decoded.size());
+        for (int i = 0; i < paths.size(); i++)
+        {
+            assertSamePath(paths.get(i), decoded.get(i));
+        }
+        assertNull(decoded.get(0).getWidths());
+        assertEquals(0.5f, decoded.get(1).getWidth(1), 0);
+    }
+
+    @Test
+    public void encodesOnlyTheUsedPoints() throws IOException
+    {
+        // A path still being drawn has spare capacity, which mustn't be written,
+        // and one that's been trimmed has none; both encode the same.
+        PaintPath growing = new PaintPath(0xff336699, 0, 0, 1);
+        PaintPath trimmed = new PaintPath(0xff336699, 0, 0, 1);
+        for (int i = 1; i < 20; i++)
+        {
+            growing.addPoint(i / 20f, i / 40f, 1 + i / 40f);
+            trimmed.addPoint(i / 20f, i / 40f, 1 + i / 40f);
+        }
+        trimmed.trimToSize();
+
+        byte[] a = StrokeCodec.encode(Arrays.asList(growing));
+        byte[] b = StrokeCodec.encode(Arrays.asList(trimmed));
+        assertArrayEquals(a, b);
+        assertEquals(8 + StrokeCodec.getEncodedSize(trimmed), a.length);
+
+        assertSamePath(trimmed, StrokeCodec.decode(a).get(0));
+    }
+
+    @Test
+    public void decodesVersion1() throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 8 + 16).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(1).putInt(1);
+        buffer.putInt(0xff00ff00).putInt(2);
+        buffer.putFloat(0.25f).putFloat(0.5f).putFloat(0.75f).putFloat(1);
+
+        PaintPath p = StrokeCodec.decode(buffer.array()).get(0);
+        assertEquals(0xff00ff00, p.getColor());
+        assertEquals(2, p.getPointCount());
+        assertEquals(0.75f, p.getX(1), 0);
+        assertNull(p.getWidths());
+    }
+
+    @Test
+    public void rejectsEveryTruncation()
+    {
+        List<PaintPath> paths = new ArrayList<PaintPath>();
+        PaintPath p = new PaintPath(0xff123456, 0.1f, 0.1f, 1);
+        p.addPoint(0.2f, 0.2f, 1.25f);
+        paths.add(p);
+        paths.add(new PaintPath(0xff654321, 0.3f, 0.3f));
+        byte[] data = StrokeCodec.encode(paths);
+
+        for (int length = 0; length < data.length; length++)
+        {
+            try
+            {
+                StrokeCodec.decode(Arrays.copyOf(data, length));
+                fail("Decoded " + length + " of " + data.length + " bytes");
+            }
+            catch (IOException expected)
+            {
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsHugePathCount() throws IOException
+    {
+        // Must fail on the count, rather than allocating room for it.
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(StrokeCodec.VERSION).putInt(Integer.MAX_VALUE);
+        StrokeCodec.decode(buffer.array());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsHugePointCount() throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(StrokeCodec.VERSION).putInt(1);
+        buffer.putInt(0xff000000).putInt(0x7fffffff);
+        StrokeCodec.decode(buffer.array());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownVersion() throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(StrokeCodec.VERSION + 1).putInt(0);
+        StrokeCodec.decode(buffer.array());
+    }
+
+    static void assertSamePath(PaintPath expected, PaintPath actual)
+    {
+        assertEquals(expected.getColor(), actual.getColor());
+        assertEquals(expected.getPointCount(), actual.getPointCount());
+        for (int i = 0; i < expected.getPointCount(); i++)
+        {
+            assertEquals(expected.getX(i), actual.getX(i), 0);
+            assertEquals(expected.getY(i), actual.getY(i), 0);
+            assertEquals(expected.getWidth(i), actual.getWidth(i), 0);
+        }
+        assertEquals(expected.getLeft(), actual.getLeft(), 0);
+        assertEquals(expected.getBottom(), actual.getBottom(), 0);
+    }
+}
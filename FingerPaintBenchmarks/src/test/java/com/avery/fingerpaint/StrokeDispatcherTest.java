@@ -0,0 +1,127 @@
+package com.avery.fingerpaint;
+
+import com.avery.fingerpaint.benchmark.TouchGesture;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StrokeDispatcherTest
+{
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int POINTER_COUNT = 10;
+
+    @Test
+    public void givesEachPointerItsOwnPath()
+    {
+        TouchGesture gesture = new TouchGesture(WIDTH, HEIGHT, POINTER_COUNT, 60, 2);
+        Dispatcher dispatcher = new Dispatcher();
+        TouchSampleQueue queue = new TouchSampleQueue(256);
+        for (int e = 0; e < gesture.getEventCount(); e++)
+        {
+            assertTrue(gesture.offer(queue, e));
+            dispatcher.takeSamples(queue);
+        }
+
+        assertTrue(dispatcher.getStrokes().isEmpty());
+        assertEquals(POINTER_COUNT, dispatcher.finished.size());
+        int[] liftOrder = gesture.getLiftOrder();
+        for (int i = 0; i < POINTER_COUNT; i++)
+        {
+            StrokeBuilder stroke = dispatcher.finished.get(i);
+            int pointerId = stroke.getPointerId();
+            assertEquals("Stroke " + i + " finished out of lift order", liftOrder[i], pointerId);
+
+            PaintPath path = stroke.getPath();
+            assertEquals(TouchGesture.getColor(pointerId), path.getColor());
+            // At least a point for most moves, each of which is over the threshold.
+            assertTrue(path.getPointCount() > 60);
+            float left = gesture.getLaneLeft(pointerId);
+            float right = gesture.getLaneLeft(pointerId + 1);
+            for (int p = 0; p < path.getPointCount(); p++)
+            {
+                assertTrue("Pointer " + pointerId + " has a point from another lane",
+                        path.getX(p) > left && path.getX(p) < right);
+            }
+        }
+    }
+
+    @Test
+    public void finishesStrokesWhenTheirPointerIsReused()
+    {
+        Dispatcher dispatcher = new Dispatcher();
+        TouchSampleQueue queue = new TouchSampleQueue(16);
+        queue.offer(TouchSampleQueue.DOWN, 0, 1, 100, 100, 1, 0);
+        queue.offer(TouchSampleQueue.DOWN, 1, 2, 500, 100, 1, 0);
+        queue.offer(TouchSampleQueue.MOVE, 0, 0, 120, 100, 1, 8);
+        // Down again without an UP, as after a lost event.
+        queue.offer(TouchSampleQueue.DOWN, 0, 3, 300, 300, 1, 16);
+        queue.offer(TouchSampleQueue.MOVE, 0, 0, 320, 300, 1, 24);
+        queue.offer(TouchSampleQueue.UP, 0, 0, 320, 300, 1, 32);
+        // Ignored: the pointer has no stroke.
+        queue.offer(TouchSampleQueue.MOVE, 0, 0, 340, 300, 1, 40);
+        queue.offer(TouchSampleQueue.UP, 0, 0, 340, 300, 1, 40);
+        queue.offer(TouchSampleQueue.DOWN, 0, 4, 100, 500, 1, 48);
+        assertEquals(8, dispatcher.takeSamples(queue));
+
+        assertEquals(2, dispatcher.finished.size());
+        assertEquals(1, dispatcher.finished.get(0).getPath().getColor());
+        assertEquals(2, dispatcher.finished.get(0).getPath().getPointCount());
+        assertEquals(3, dispatcher.finished.get(1).getPath().getColor());
+        assertEquals(2, dispatcher.finished.get(1).getPath().getPointCount());
+
+        assertEquals(2, dispatcher.getStrokes().size());
+        assertEquals(2, dispatcher.getStrokes().get(0).getPath().getColor());
+        assertEquals(4, dispatcher.getStrokes().get(1).getPath().getColor());
+    }
+
+    @Test
+    public void cancelFinishesStrokesOldestFirst()
+    {
+        Dispatcher dispatcher = new Dispatcher();
+        TouchSampleQueue queue = new TouchSampleQueue(16);
+        assertEquals(0, dispatcher.takeSamples(queue));
+
+        queue.offer(TouchSampleQueue.DOWN, 2, 1, 100, 100, 1, 5);
+        queue.offer(TouchSampleQueue.DOWN, 0, 2, 200, 100, 1, 6);
+        queue.offer(TouchSampleQueue.DOWN, 1, 3, 300, 100, 1, 7);
+        queue.offer(TouchSampleQueue.CANCEL, -1, 0, 0, 0, 0, 8);
+        assertEquals(5, dispatcher.takeSamples(queue));
+
+        assertTrue(dispatcher.getStrokes().isEmpty());
+        assertEquals(3, dispatcher.finished.size());
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals(i + 1, dispatcher.finished.get(i).getPath().getColor());
+        }
+    }
+
+    private static class Dispatcher extends StrokeDispatcher<StrokeBuilder>
+    {
+        // In the order they finished.
+        final ArrayList<StrokeBuilder> finished = new ArrayList<StrokeBuilder>();
+
+        Dispatcher()
+        {
+            setSize(WIDTH, HEIGHT);
+        }
+
+        @Override
+        protected StrokeBuilder createStroke(int pointerId, int color, float x, float y, float pressure, long time,
+                int width, int height)
+        {
+            return new StrokeBuilder(pointerId, color, x, y, pressure, time, width, height);
+        }
+
+        @Override
+        protected void onStrokeFinished(StrokeBuilder stroke)
+        {
+            assertTrue(!getStrokes().contains(stroke));
+            finished.add(stroke);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.avery.fingerpaint;
+
+import com.avery.fingerpaint.benchmark.StrokeData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StrokeJournalFileTest
+{
+    private File file;
+    private List<PaintPath> paths;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        file = File.createTempFile("test", ".journal");
+        file.delete();
+        paths = StrokeData.createPaths(20, 10);
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void readsBackCommittedPathsAndUndos() throws IOException
+    {
+        StrokeJournalFile journal = new StrokeJournalFile(file);
+        for (int i = 0; i < 5; i++)
+        {
+            journal.appendPath(paths.get(i));
+        }
+        journal.appendUndo();
+        journal.appendUndo();
+        journal.appendPath(paths.get(5));
+        journal.close();
+
+        List<PaintPath> read = new StrokeJournalFile(file).read();
+        assertEquals(4, read.size());
+        StrokeCodecTest.assertSamePath(paths.get(2), read.get(2));
+        StrokeCodecTest.assertSamePath(paths.get(5), read.get(3));
+    }
+
+    @Test
+    public void appendsAfterWhatWasRead() throws IOException
+    {
+        StrokeJournalFile journal = new StrokeJournalFile(file);
+        journal.appendPath(paths.get(0));
+        journal.close();
+
+        journal = new StrokeJournalFile(file);
+        assertEquals(1, journal.read().size());
+        journal.appendPath(paths.get(1));
+        journal.close();
+
+        List<PaintPath> read = new StrokeJournalFile(file).read();
+        assertEquals(2, read.size());
+        StrokeCodecTest.assertSamePath(paths.get(1), read.get(1));
+    }
+
+    @Test
+    public void dropsARecordCutOffByACrash() throws IOException
+    {
+        StrokeJournalFile journal = new StrokeJournalFile(file);
+        for (int i = 0; i < 3; i++)
+        {
+            journal.appendPath(paths.get(i));
+        }
+        journal.close();
+
+        truncateBy(5);
+
+        journal = new StrokeJournalFile(file);
+        assertEquals(2, journal.read().size());
+        assertTrue(journal.getDiscardedBytes() > 0);
+
+        // The partial record is gone, so the next one follows the last whole one.
+        journal.appendPath(paths.get(3));
+        journal.close();
+        List<PaintPath> read = new StrokeJournalFile(file).read();
+        assertEquals(3, read.size());
+        StrokeCodecTest.assertSamePath(paths.get(3), read.get(2));
+    }
+
+    @Test
+    public void stopsAtACorruptRecord() throws IOException
+    {
+        StrokeJournalFile journal = new StrokeJournalFile(file);
+        journal.appendPath(paths.get(0));
+        journal.commit();
+        long first = journal.size();
+        journal.appendPath(paths.get(1));
+        journal.appendPath(paths.get(2));
+        journal.close();
+
+        // Flip a byte in the second record's points.
+        RandomAccessFile f = new RandomAccessFile(file, "rw");
+        f.seek(first + 20);
+        int b = f.read();
+        f.seek(first + 20);
+        f.write(b ^ 0xff);
+        f.close();
+
+        List<PaintPath> read = new StrokeJournalFile(file).read();
+        assertEquals(1, read.size());
+    }
+
+    @Test
+    public void compactsMostlyUndoneJournals() throws IOException
+    {
+        StrokeJournalFile journal = new StrokeJournalFile(file);
+        for (int i = 0; i < 20; i++)
+        {
+            journal.appendPath(paths.get(i));
+            if (i > 0)
+                journal.appendUndo();
+        }
+        journal.commit();
+        long before = journal.size();
+
+        assertEquals(1, journal.read().size());
+        assertTrue(journal.size() < before);
+        journal.close();
+
+        List<PaintPath> read = new StrokeJournalFile(file).read();
+        assertEquals(1, read.size());
+        StrokeCodecTest.assertSamePath(paths.get(0), read.get(0));
+    }
+
+    @Test
+    public void startsAgainFromAnUnrecognizedFile() throws IOException
+    {
+        RandomAccessFile f = new RandomAccessFile(file, "rw");
+        f.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 });
+        f.close();
+
+        StrokeJournalFile journal = new StrokeJournalFile(file);
+        assertEquals(0, journal.read().size());
+        assertEquals(10, journal.getDiscardedBytes());
+        journal.appendPath(paths.get(0));
+        journal.close();
+
+        assertEquals(1, new StrokeJournalFile(file).read().size());
+    }
+
+    @Test
+    public void clearRemovesEverything() throws IOException
+    {
+        StrokeJournalFile journal = new StrokeJournalFile(file);
+        journal.appendPath(paths.get(0));
+        journal.commit();
+        journal.appendPath(paths.get(1));
+        journal.clear();
+        journal.appendPath(paths.get(2));
+        journal.close();
+
+        List<PaintPath> read = new StrokeJournalFile(file).read();
+        assertEquals(1, read.size());
+        StrokeCodecTest.assertSamePath(paths.get(2), read.get(0));
+    }
+
+    private void truncateBy(int bytes) throws IOException
+    {
+        RandomAccessFile f = new RandomAccessFile(file, "rw");
+        f.setLength(f.length() - bytes);
+        f.close();
+    }
+}
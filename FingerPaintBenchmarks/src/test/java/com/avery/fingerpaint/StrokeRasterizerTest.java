@@ -0,0 +1,291 @@
+package com.avery.fingerpaint;
+
+import com.avery.fingerpaint.benchmark.StrokeData;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class StrokeRasterizerTest
+{
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 200;
+    private static final float RADIUS = 4;
+
+    // The reference images, in src/test/resources/com/avery/fingerpaint/reference.
+    private static final String[] SCENES = { "strokes", "taps", "edges" };
+    private static final int STROKES = 0;
+    private static final int TAPS = 1;
+    private static final int EDGES = 2;
+
+    // How far any channel of a pixel may be outside the colors around it in
+    // the reference, and how far pixels may be from the reference on average.
+    private static final int TOLERANCE = 16;
+    private static final int MEAN_TOLERANCE = 2;
+
+    @Test
+    public void drawingOverACheckpointMatchesRenderingEverything()
+    {
+        // How undo replays from a checkpoint.
+        List<PaintPath> paths = StrokeData.createPaths(50, 20);
+        StrokeRasterizer rasterizer = new StrokeRasterizer(WIDTH, HEIGHT, 4);
+
+        int[] expected = new int[WIDTH * HEIGHT];
+        rasterizer.render(paths, expected);
+
+        int[] actual = new int[WIDTH * HEIGHT];
+        rasterizer.render(paths.subList(0, 40), actual);
+        rasterizer.drawOver(paths.subList(40, 50), actual);
+
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void drawsColorsOpaque()
+    {
+        PaintPath p = new PaintPath(0x40ff0000, 0.5f, 0.5f);
+        p.addPoint(0.6f, 0.5f);
+
+        int[] pixels = new int[WIDTH * HEIGHT];
+        new StrokeRasterizer(WIDTH, HEIGHT, 4).render(Arrays.asList(p), pixels);
+
+        assertEquals(0xffff0000, pixels[HEIGHT / 2 * WIDTH + WIDTH * 11 / 20]);
+    }
+
+    /**
+     * Compares the rasterizer with reference images of how PaintPathRenderer
+     * draws the same paths: the StrokeTessellator mesh it hands drawVertices,
+     * filled the way drawVertices fills it. Edges are anti-aliased differently,
+     * by the mesh's fringe rather than by distance, so each pixel only has to be
+     * within the range of colors around it in the reference.
+     */
+    @Test
+    public void matchesTheReferenceImages() throws IOException
+    {
+        for (int scene = 0; scene < SCENES.length; scene++)
+        {
+            int[] expected = readReference(scene);
+            int[] actual = new int[WIDTH * HEIGHT];
+            new StrokeRasterizer(WIDTH, HEIGHT, RADIUS).render(createScene(scene), actual);
+
+            long total = 0;
+            for (int y = 0; y < HEIGHT; y++)
+            {
+                for (int x = 0; x < WIDTH; x++)
+                {
+                    int i = y * WIDTH + x;
+                    total += channelDifference(expected[i], actual[i]);
+                    int d = neighborhoodDifference(expected, x, y, actual[i]);
+                    assertTrue(SCENES[scene] + " differs by " + d + " at " + x + ", " + y, d <= TOLERANCE);
+                }
+            }
+            assertTrue(SCENES[scene] + " mean difference " + (float) total / expected.length,
+                    total < expected.length * MEAN_TOLERANCE);
+        }
+    }
+
+    /**
+     * The reference images have to be written again whenever the mesh changes.
+     */
+    @Test
+    public void referenceImagesMatchTheMesh() throws IOException
+    {
+        for (int scene = 0; scene < SCENES.length; scene++)
+        {
+            assertArrayEquals(SCENES[scene], readReference(scene), drawMeshes(createScene(scene)));
+        }
+    }
+
+    /**
+     * Writes the reference images into the directory given, from the mesh.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        for (int scene = 0; scene < SCENES.length; scene++)
+        {
+            BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+            image.setRGB(0, 0, WIDTH, HEIGHT, drawMeshes(createScene(scene)), 0, WIDTH);
+            ImageIO.write(image, "png", new File(args[0], SCENES[scene] + ".png"));
+        }
+    }
+
+    private static List<PaintPath> createScene(int scene)
+    {
+        Random random = new Random(7 + scene);
+        List<PaintPath> paths = new ArrayList<PaintPath>();
+        switch (scene)
+        {
+            case STROKES:
+                // Tapering strokes of random colors, some with alpha, and a tap.
+                for (int n = 0; n < 12; n++)
+                {
+                    paths.add(createStroke(random, 0.2f + random.nextFloat() * 0.6f, 0.2f + random.nextFloat() * 0.6f));
+                }
+                paths.add(new PaintPath(0xff0000ff, 0.5f, 0.5f, 1.5f));
+                break;
+            case TAPS:
+                // Overlapping taps across the range of widths.
+                for (int n = 0; n < 40; n++)
+                {
+                    float width = PaintPath.MIN_WIDTH + random.nextFloat() * (PaintPath.MAX_WIDTH - PaintPath.MIN_WIDTH);
+                    paths.add(new PaintPath(random.nextInt(), 0.1f + random.nextFloat() * 0.8f,
+                            0.1f + random.nextFloat() * 0.8f, width));
+                }
+                break;
+            case EDGES:
+                // Strokes starting near the edges and running off them.
+                for (int n = 0; n < 8; n++)
+                {
+                    paths.add(createStroke(random, n % 2 == 0 ? 0.02f : 0.98f, random.nextFloat()));
+                    paths.add(createStroke(random, random.nextFloat(), n % 2 == 0 ? 0.02f : 0.98f));
+                }
+                break;
+        }
+        return paths;
+    }
+
+    private static PaintPath createStroke(Random random, float x, float y)
+    {
+        PaintPath p = new PaintPath(random.nextInt(), x, y, 1);
+        for (int i = 1; i < 30; i++)
+        {
+            x += (random.nextFloat() - 0.5f) * 0.06f;
+            y += (random.nextFloat() - 0.5f) * 0.04f;
+            p.addPoint(x, y, 0.5f + random.nextFloat());
+        }
+        return p;
+    }
+
+    private static int[] readReference(int scene) throws IOException
+    {
+        InputStream in = StrokeRasterizerTest.class.getResourceAsStream("reference/" + SCENES[scene] + ".png");
+        assertNotNull("Missing reference image " + SCENES[scene], in);
+        try
+        {
+            BufferedImage image = ImageIO.read(in);
+            assertEquals(WIDTH, image.getWidth());
+            assertEquals(HEIGHT, image.getHeight());
+            return image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    // How far any channel of color lies outside the range that channel spans
+    // in the reference pixel at (x, y) and its neighbors. An edge pixel can be
+    // anywhere between the colors either side of the edge.
+    private static int neighborhoodDifference(int[] reference, int x, int y, int color)
+    {
+        int d = 0;
+        for (int shift = 0; shift < 32; shift += 8)
+        {
+            int min = 255;
+            int max = 0;
+            for (int ny = Math.max(0, y - 1); ny <= Math.min(HEIGHT - 1, y + 1); ny++)
+            {
+                for (int nx = Math.max(0, x - 1); nx <= Math.min(WIDTH - 1, x + 1); nx++)
+                {
+                    int channel = (reference[ny * WIDTH + nx] >> shift) & 0xff;
+                    min = Math.min(min, channel);
+                    max = Math.max(max, channel);
+                }
+            }
+            int channel = (color >> shift) & 0xff;
+            d = Math.max(d, Math.max(min - channel, channel - max));
+        }
+        return d;
+    }
+
+    private static int[] drawMeshes(List<PaintPath> paths)
+    {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0xffffffff);
+        StrokeTessellator tessellator = new StrokeTessellator();
+        tessellator.setScale(WIDTH, HEIGHT, RADIUS);
+        for (PaintPath p : paths)
+        {
+            tessellator.tessellate(p, 0);
+            drawMesh(tessellator, pixels);
+        }
+        return pixels;
+    }
+
+    // The largest difference between the color channels of two pixels.
+    private static int channelDifference(int a, int b)
+    {
+        int d = 0;
+        for (int shift = 0; shift < 32; shift += 8)
+        {
+            d = Math.max(d, Math.abs(((a >> shift) & 0xff) - ((b >> shift) & 0xff)));
+        }
+        return d;
+    }
+
+    // Draws the tessellator's mesh over opaque pixels the way drawVertices does:
+    // each pixel whose center is in a triangle gets the color interpolated
+    // between its corners, blended over what's there.
+    private static void drawMesh(StrokeTessellator tessellator, int[] pixels)
+    {
+        float[] v = tessellator.getVertices();
+        int[] colors = tessellator.getColors();
+        short[] indices = tessellator.getIndices();
+        for (int t = 0; t < tessellator.getIndexCount(); t += 3)
+        {
+            int a = indices[t] & 0xffff;
+            int b = indices[t + 1] & 0xffff;
+            int c = indices[t + 2] & 0xffff;
+            float ax = v[a * 2], ay = v[a * 2 + 1];
+            float bx = v[b * 2], by = v[b * 2 + 1];
+            float cx = v[c * 2], cy = v[c * 2 + 1];
+            float area = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+            if (area == 0)
+                continue;
+
+            int left = Math.max(0, (int) Math.floor(Math.min(ax, Math.min(bx, cx))));
+            int right = Math.min(WIDTH - 1, (int) Math.ceil(Math.max(ax, Math.max(bx, cx))));
+            int top = Math.max(0, (int) Math.floor(Math.min(ay, Math.min(by, cy))));
+            int bottom = Math.min(HEIGHT - 1, (int) Math.ceil(Math.max(ay, Math.max(by, cy))));
+            for (int y = top; y <= bottom; y++)
+            {
+                for (int x = left; x <= right; x++)
+                {
+                    float px = x + 0.5f;
+                    float py = y + 0.5f;
+                    float wa = ((bx - px) * (cy - py) - (by - py) * (cx - px)) / area;
+                    float wb = ((cx - px) * (ay - py) - (cy - py) * (ax - px)) / area;
+                    float wc = 1 - wa - wb;
+                    if (wa < 0 || wb < 0 || wc < 0)
+                        continue;
+
+                    float alpha = (wa * (colors[a] >>> 24) + wb * (colors[b] >>> 24) + wc * (colors[c] >>> 24)) / 255;
+                    int color = colors[a];
+                    int dst = pixels[y * WIDTH + x];
+                    int result = 0xff000000;
+                    for (int shift = 0; shift < 24; shift += 8)
+                    {
+                        float src = (color >> shift) & 0xff;
+                        float old = (dst >> shift) & 0xff;
+                        result |= (int) (src * alpha + old * (1 - alpha) + 0.5f) << shift;
+                    }
+                    pixels[y * WIDTH + x] = result;
+                }
+            }
+        }
+    }
+}
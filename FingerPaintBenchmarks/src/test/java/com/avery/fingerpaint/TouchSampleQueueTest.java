@@ -0,0 +1,179 @@
+package com.avery.fingerpaint;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TouchSampleQueueTest
+{
+    private static final int SAMPLE_COUNT = 200000;
+
+    // Small, so the producer keeps finding the queue full.
+    private static final int CAPACITY = 16;
+
+    // The most samples in one event, as a MOVE with history gives.
+    private static final int MAX_EVENT_SIZE = 8;
+
+    @Test
+    public void keepsSamplesInOrder()
+    {
+        TouchSampleQueue queue = new TouchSampleQueue(5);
+        assertEquals(8, queue.getCapacity());
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.poll());
+
+        for (int i = 0; i < 8; i++)
+        {
+            assertTrue(queue.offer(TouchSampleQueue.MOVE, i, 0, i, -i, 0.5f, i));
+        }
+        assertEquals(0, queue.remainingCapacity());
+        assertFalse(queue.offer(TouchSampleQueue.MOVE, 8, 0, 8, -8, 0.5f, 8));
+
+        for (int i = 0; i < 8; i++)
+        {
+            assertTrue(queue.poll());
+            assertEquals(TouchSampleQueue.MOVE, queue.getAction());
+            assertEquals(i, queue.getPointerId());
+            assertEquals(i, queue.getX(), 0);
+            assertEquals(-i, queue.getY(), 0);
+            assertEquals(i, queue.getTime());
+        }
+        assertFalse(queue.poll());
+        assertTrue(queue.isEmpty());
+        assertEquals(8, queue.remainingCapacity());
+    }
+
+    @Test
+    public void passesEverySampleBetweenThreads() throws InterruptedException
+    {
+        final TouchSampleQueue queue = new TouchSampleQueue(CAPACITY);
+        Consumer consumer = new Consumer(queue);
+        consumer.start();
+
+        int full = 0;
+        for (int i = 0; i < SAMPLE_COUNT; i++)
+        {
+            while (!offer(queue, i) && consumer.isAlive())
+            {
+                full++;
+                Thread.yield();
+            }
+        }
+
+        consumer.finish();
+        assertTrue(full > 0);
+    }
+
+    /**
+     * Adds samples in events, all or none of each, holding back events that
+     * don't fit, oldest first, as InkSurfaceView does.
+     */
+    @Test
+    public void passesHeldBackEventsInOrder() throws InterruptedException
+    {
+        final TouchSampleQueue queue = new TouchSampleQueue(CAPACITY);
+        Consumer consumer = new Consumer(queue);
+        consumer.start();
+
+        ArrayDeque<int[]> backlog = new ArrayDeque<int[]>();
+        int held = 0;
+        int next = 0;
+        while ((next < SAMPLE_COUNT || !backlog.isEmpty()) && consumer.isAlive())
+        {
+            // As the retries posted while anything is held back.
+            while (!backlog.isEmpty() && offerEvent(queue, backlog.peekFirst()))
+            {
+                backlog.removeFirst();
+            }
+
+            if (next < SAMPLE_COUNT)
+            {
+                int size = Math.min(SAMPLE_COUNT - next, 1 + next % MAX_EVENT_SIZE);
+                int[] event = new int[] { next, size };
+                next += size;
+                if (!backlog.isEmpty() || !offerEvent(queue, event))
+                {
+                    backlog.addLast(event);
+                    held++;
+                }
+            }
+
+            if (!backlog.isEmpty())
+                Thread.yield();
+        }
+
+        consumer.finish();
+        assertTrue(held > 0);
+    }
+
+    private static boolean offerEvent(TouchSampleQueue queue, int[] event)
+    {
+        if (queue.remainingCapacity() < event[1])
+            return false;
+
+        for (int i = 0; i < event[1]; i++)
+        {
+            assertTrue(offer(queue, event[0] + i));
+        }
+        return true;
+    }
+
+    // Sample n carries n in every field, so a torn sample shows up too.
+    private static boolean offer(TouchSampleQueue queue, int n)
+    {
+        return queue.offer(n & 3, n, n, n, n, n, n);
+    }
+
+    private static class Consumer extends Thread
+    {
+        private final TouchSampleQueue queue;
+
+        // The first sample out of place, if any, and how many were taken.
+        private volatile String error;
+        private volatile int taken;
+
+        Consumer(TouchSampleQueue queue)
+        {
+            this.queue = queue;
+        }
+
+        @Override
+        public void run()
+        {
+            int expected = 0;
+            while (expected < SAMPLE_COUNT)
+            {
+                if (!queue.poll())
+                {
+                    Thread.yield();
+                    continue;
+                }
+
+                if (queue.getTime() != expected || queue.getPointerId() != expected
+                        || queue.getColor() != expected || queue.getAction() != (expected & 3)
+                        || queue.getX() != (float) expected || queue.getY() != (float) expected
+                        || queue.getPressure() != (float) expected)
+                {
+                    error = "Expected sample " + expected + " but took " + queue.getTime();
+                    return;
+                }
+                expected++;
+                taken = expected;
+            }
+        }
+
+        void finish() throws InterruptedException
+        {
+            join(60000);
+            assertFalse("Consumer stuck at " + taken, isAlive());
+            assertNull(error);
+            assertEquals(SAMPLE_COUNT, taken);
+            assertFalse(queue.poll());
+        }
+    }
+}